@@ -0,0 +1,93 @@
+package com.rocf.pinwheel.benchmark;
+
+import com.rocf.pinwheel.core.AlphaKernel;
+import com.rocf.pinwheel.core.BatchModifier;
+import com.rocf.pinwheel.core.ParticleStore;
+import com.rocf.pinwheel.core.ScaleKernel;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one modifier pass over a full pool, in isolation from emission and integration.
+ * The ages are spread over the modifier range and the particles are never stopped, so every
+ * pass evaluates the same mix of branches. The {@code particles} counter reports the particles
+ * modified per second.
+ *
+ * @author rocf.wong@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModifierBenchmark {
+
+    @Param({"30", "1000", "10000", "100000"})
+    public int poolSize;
+
+    @Param({"alpha", "alphaBaked", "scale", "scaleBaked"})
+    public String modifier;
+
+    private ParticleStore mStore;
+    private BatchModifier mModifier;
+    private long[] mAges;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long particles;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            particles = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long endMilis;
+        if ("alpha".equals(modifier)) {
+            mModifier = new AlphaKernel(-250, 250, 0, 2000);
+            endMilis = 2000;
+        } else if ("alphaBaked".equals(modifier)) {
+            mModifier = new AlphaKernel(-250, 250, 0, 2000).bake(128);
+            endMilis = 2000;
+        } else if ("scale".equals(modifier)) {
+            mModifier = new ScaleKernel(0.3f, 0.5f, 0, 400);
+            endMilis = 400;
+        } else {
+            mModifier = new ScaleKernel(0.3f, 0.5f, 0, 400).bake(128);
+            endMilis = 400;
+        }
+        mStore = new ParticleStore(poolSize);
+        mAges = new long[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            int slot = mStore.obtain();
+            mStore.mRunning[slot] = true;
+            mStore.mAlphaInitialValue[slot] = -100;
+            mStore.mAlphaValueIncrement[slot] = 200;
+            mStore.mScaleInitialValue[slot] = 0.4f;
+            // From 1, age 0 only restores the spawn value
+            mAges[i] = 1 + i % (endMilis - 1);
+        }
+    }
+
+    @Benchmark
+    public ParticleStore apply(Counters counters) {
+        mModifier.applyBatch(mStore, mStore.mActiveSlots, mAges, 0, mStore.mActiveCount);
+        counters.particles += mStore.mActiveCount;
+        return mStore;
+    }
+}
@@ -0,0 +1,55 @@
+package com.rocf.pinwheel.benchmark;
+
+import com.rocf.pinwheel.core.AlphaKernel;
+import com.rocf.pinwheel.core.ParticleEngine;
+import com.rocf.pinwheel.core.ScaleKernel;
+import com.rocf.pinwheel.core.SpeedByComponentsKernel;
+
+import java.util.Random;
+
+/**
+ * Builds engines set up like the one of the PinWheelWidget, so the numbers match what ships.
+ *
+ * @author rocf.wong@gmail.com
+ */
+final class Simulations {
+
+    static final int TIME_TO_LIVE = 6000;
+    //one 60fps frame
+    static final long FRAME_MILIS = 16;
+    //simulated before measuring, longer than a time to live so that spawns and retires are in balance
+    static final long WARM_UP_MILIS = 2 * TIME_TO_LIVE;
+
+    static final String MODIFIERS_NONE = "none";
+    static final String MODIFIERS_ALPHA = "alpha";
+    static final String MODIFIERS_SCALE = "scale";
+    static final String MODIFIERS_ALL = "all";
+
+    private Simulations() {
+    }
+
+    /**
+     * @param poolSize  capacity of the pool, also the emission rate per second as in the widget
+     * @param modifiers one of the MODIFIERS_ constants
+     */
+    static ParticleEngine newEngine(int poolSize, String modifiers) {
+        return newEngine(poolSize, modifiers, false);
+    }
+
+    /**
+     * @param ringBuffer true to keep the particles in a ring buffer, see {@link ParticleEngine#setRingBuffer(boolean)}
+     */
+    static ParticleEngine newEngine(int poolSize, String modifiers, boolean ringBuffer) {
+        ParticleEngine engine = new ParticleEngine(poolSize, TIME_TO_LIVE, new Random(0));
+        engine.setRingBuffer(ringBuffer);
+        engine.setEmiter(500, 500, 500, 500);
+        // The widget speeds, 0.08dp/ms on a xhdpi screen
+        engine.addInitializer(new SpeedByComponentsKernel(-0.16f, 0.16f, -0.16f, 0.16f));
+        if (MODIFIERS_ALPHA.equals(modifiers) || MODIFIERS_ALL.equals(modifiers))
+            engine.addModifier(new AlphaKernel(-250, 250, 0, 2000));
+        if (MODIFIERS_SCALE.equals(modifiers) || MODIFIERS_ALL.equals(modifiers))
+            engine.addModifier(new ScaleKernel(0.3f, 0.5f, 0, 400).bake(128));
+        engine.startEmiting(poolSize);
+        return engine;
+    }
+}
@@ -0,0 +1,76 @@
+package com.rocf.pinwheel.benchmark;
+
+import com.rocf.pinwheel.core.ParticleEngine;
+import com.rocf.pinwheel.core.ParticleStore;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the pool: activating a whole pool of particles through the initializers, then retiring them.
+ * The {@code particles} counter reports the particles spawned and retired per second.
+ *
+ * @author rocf.wong@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpawnRetireBenchmark {
+
+    @Param({"30", "1000", "10000", "100000"})
+    public int poolSize;
+
+    private ParticleEngine mEngine;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long particles;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            particles = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mEngine = Simulations.newEngine(poolSize, Simulations.MODIFIERS_NONE);
+    }
+
+    @Benchmark
+    public int spawnAndRetire(Counters counters) {
+        int spawned = mEngine.activateParticles(poolSize, 0);
+        mEngine.getStore().retireAll();
+        counters.particles += spawned;
+        return spawned;
+    }
+
+    /**
+     * Retiring from the middle of the live slots, as expiring particles do.
+     */
+    @Benchmark
+    public int spawnAndRetireInterleaved(Counters counters) {
+        int spawned = mEngine.activateParticles(poolSize, 0);
+        ParticleStore store = mEngine.getStore();
+        for (int i = 0; i < store.mActiveCount; i++) {
+            store.retire(i);
+        }
+        store.retireAll();
+        counters.particles += spawned;
+        return spawned;
+    }
+}
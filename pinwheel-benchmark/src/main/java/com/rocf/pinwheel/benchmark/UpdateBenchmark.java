@@ -0,0 +1,71 @@
+package com.rocf.pinwheel.benchmark;
+
+import com.rocf.pinwheel.core.ParticleEngine;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one simulation frame, the equivalent of {@code ParticleSystem#onUpdate}: emission, integration,
+ * the modifiers and retiring. The {@code particles} counter reports the live particles updated per second.
+ *
+ * @author rocf.wong@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateBenchmark {
+
+    @Param({"30", "1000", "10000", "100000"})
+    public int poolSize;
+
+    @Param({Simulations.MODIFIERS_NONE, Simulations.MODIFIERS_ALPHA, Simulations.MODIFIERS_SCALE, Simulations.MODIFIERS_ALL})
+    public String modifiers;
+
+    @Param({"false", "true"})
+    public boolean ringBuffer;
+
+    private ParticleEngine mEngine;
+    private long mMiliseconds;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long particles;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            particles = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mEngine = Simulations.newEngine(poolSize, modifiers, ringBuffer);
+        for (mMiliseconds = 0; mMiliseconds < Simulations.WARM_UP_MILIS; mMiliseconds += Simulations.FRAME_MILIS) {
+            mEngine.update(mMiliseconds);
+        }
+    }
+
+    @Benchmark
+    public int update(Counters counters) {
+        mMiliseconds += Simulations.FRAME_MILIS;
+        mEngine.update(mMiliseconds);
+        int live = mEngine.getStore().mActiveCount;
+        counters.particles += live;
+        return live;
+    }
+}
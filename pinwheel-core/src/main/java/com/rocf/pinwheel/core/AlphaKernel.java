@@ -0,0 +1,95 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * Fades the particles along a {@link Curve} from a random initial to a random final alpha between
+ * a start and an end age, the particles are stopped at the end age.
+ * <p/>
+ * The random values are seeded on spawn, the alpha is then a function of the age only.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class AlphaKernel implements SeededModifier {
+
+    //channels of ParticleStore.random, apart from the other kernels
+    private static final int CHANNEL_INITIAL = 16;
+    private static final int CHANNEL_FINAL = 17;
+
+    protected final int mInitialValue;
+    protected final int mFinalValue;
+    protected final long mStartTime;
+    protected final long mEndTime;
+    protected final float mDuration;
+    protected Curve mCurve;
+
+    public AlphaKernel(int initialValue, int finalValue, long startMilis, long endMilis, Curve curve) {
+        mInitialValue = initialValue;
+        mFinalValue = finalValue;
+        mStartTime = startMilis;
+        mEndTime = endMilis;
+        mDuration = mEndTime - mStartTime;
+        mCurve = curve;
+    }
+
+    public AlphaKernel(int initialValue, int finalValue, long startMilis, long endMilis) {
+        this(initialValue, finalValue, startMilis, endMilis, Curve.LINEAR);
+    }
+
+    /**
+     * Sample the curve once into a table, see {@link BakedCurve}
+     *
+     * @param resolution number of samples
+     * @return this
+     */
+    public AlphaKernel bake(int resolution) {
+        mCurve = new BakedCurve(mCurve, resolution);
+        return this;
+    }
+
+    @Override
+    public void onSpawn(ParticleStore store, int[] slots, int from, int to) {
+        final float[] alpha = store.mAlpha;
+        final int[] alphaInitialValue = store.mAlphaInitialValue;
+        final int[] alphaFinalValue = store.mAlphaFinalValue;
+        final int[] alphaValueIncrement = store.mAlphaValueIncrement;
+        final int[] seeds = store.mSeed;
+        final int initialBound = mInitialValue < 0 ? -mInitialValue : mInitialValue;
+        final int finalBound = mFinalValue < 0 ? -mFinalValue : mFinalValue;
+        for (int i = from; i < to; i++) {
+            int slot = slots[i];
+            int temp = (int) (ParticleStore.random(seeds[slot], CHANNEL_INITIAL) * initialBound);
+            alpha[slot] = temp;
+            alphaInitialValue[slot] = -temp;
+            alphaFinalValue[slot] = (int) (ParticleStore.random(seeds[slot], CHANNEL_FINAL) * finalBound);
+            alphaValueIncrement[slot] = alphaFinalValue[slot] - alphaInitialValue[slot];
+        }
+    }
+
+    @Override
+    public void applyBatch(ParticleStore store, int[] slots, long[] ages, int from, int to) {
+        final float[] alpha = store.mAlpha;
+        final int[] alphaInitialValue = store.mAlphaInitialValue;
+        final int[] alphaFinalValue = store.mAlphaFinalValue;
+        final int[] alphaValueIncrement = store.mAlphaValueIncrement;
+        final long startTime = mStartTime;
+        final long endTime = mEndTime;
+        final float duration = mDuration;
+        final Curve curve = mCurve;
+        for (int i = from; i < to; i++) {
+            int slot = slots[i];
+            long miliseconds = ages[i];
+            if (miliseconds == 0) {
+                // The spawn value
+                alpha[slot] = -alphaInitialValue[slot];
+            } else if (miliseconds < startTime) {
+                alpha[slot] = mInitialValue;
+            } else if (miliseconds >= endTime) {
+                alpha[slot] = alphaFinalValue[slot];
+                store.mScale[slot] = 0;
+                store.mRunning[slot] = false;
+            } else {
+                float interpolaterdValue = curve.getInterpolation((miliseconds - startTime) / duration);
+                alpha[slot] = (int) (alphaInitialValue[slot] + alphaValueIncrement[slot] * interpolaterdValue);
+            }
+        }
+    }
+}
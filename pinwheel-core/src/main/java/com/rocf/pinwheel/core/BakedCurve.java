@@ -0,0 +1,41 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * A {@link Curve} sampled once into a float table, {@link #getInterpolation(float)} is a
+ * lookup with linear interpolation between the two closest samples instead of evaluating the curve.
+ * Input is clamped to [0, 1].
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class BakedCurve implements Curve {
+
+    private final float[] mSamples;
+    private final int mLastIndex;
+
+    /**
+     * @param curve      the curve to sample
+     * @param resolution number of samples, at least 2
+     */
+    public BakedCurve(Curve curve, int resolution) {
+        if (resolution < 2) {
+            throw new IllegalArgumentException("BakedCurve needs at least 2 samples, got " + resolution);
+        }
+        mSamples = new float[resolution];
+        mLastIndex = resolution - 1;
+        for (int i = 0; i < resolution; i++) {
+            mSamples[i] = curve.getInterpolation(i / (float) mLastIndex);
+        }
+    }
+
+    @Override
+    public float getInterpolation(float input) {
+        if (input <= 0)
+            return mSamples[0];
+        if (input >= 1)
+            return mSamples[mLastIndex];
+        float position = input * mLastIndex;
+        int index = (int) position;
+        float fraction = position - index;
+        return mSamples[index] + (mSamples[index + 1] - mSamples[index]) * fraction;
+    }
+}
@@ -0,0 +1,16 @@
+package com.rocf.pinwheel.core;
+
+import java.util.Random;
+
+/**
+ * Initializer counterpart of {@link BatchModifier}, called once for all the particles activated by an update.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public interface BatchInitializer {
+
+    /**
+     * initializes the particles of slots[from] to slots[to - 1]
+     */
+    void initBatch(ParticleStore store, int[] slots, int from, int to, Random r);
+}
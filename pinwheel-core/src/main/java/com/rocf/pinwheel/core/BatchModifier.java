@@ -0,0 +1,18 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * A modifier that processes all live particles in one call, straight on the {@link ParticleStore}.
+ * {@link ParticleEngine} calls it once per update instead of once per particle.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public interface BatchModifier {
+
+    /**
+     * modifies the particles of slots[from] to slots[to - 1], clears {@link ParticleStore#mRunning}
+     * of the particles to stop
+     *
+     * @param ages age of each particle in miliseconds, at the same index as its slot
+     */
+    void applyBatch(ParticleStore store, int[] slots, long[] ages, int from, int to);
+}
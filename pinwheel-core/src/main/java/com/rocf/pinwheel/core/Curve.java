@@ -0,0 +1,30 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * Maps the elapsed fraction of a modifier to the fraction of its change, the plain Java counterpart
+ * of {@code android.view.animation.Interpolator}.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public interface Curve {
+
+    Curve LINEAR = new Curve() {
+        @Override
+        public float getInterpolation(float input) {
+            return input;
+        }
+    };
+
+    //rises from 0 to 1 and back to 0 over the input range
+    Curve SIN = new Curve() {
+        @Override
+        public float getInterpolation(float input) {
+            return (float) Math.sin(Math.PI * input);
+        }
+    };
+
+    /**
+     * @param input elapsed fraction in [0, 1]
+     */
+    float getInterpolation(float input);
+}
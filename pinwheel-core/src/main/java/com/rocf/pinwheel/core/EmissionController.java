@@ -0,0 +1,115 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * Turns an emission rate into a whole number of particles per update. The fraction of a particle that is
+ * due but not emitted yet is carried over to the next update, so the emitted count stays exact over any
+ * run time instead of being recomputed from an ever growing product of rate and time.
+ * <p/>
+ * The rate can follow a {@link Curve} over time, e.g. to ramp an emitter up or down.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class EmissionController {
+
+    //midpoint rule samples to integrate a rate curve when seeking
+    private static final int CURVE_INTEGRATION_STEPS = 64;
+
+    private float mParticlesPerSecond;
+    private Curve mRateCurve;
+    private long mCurveDurationMilis;
+
+    private float mAccumulator;
+    private long mLastMilis = -1;
+
+    public EmissionController(float particlesPerSecond) {
+        setRate(particlesPerSecond);
+    }
+
+    public void setRate(float particlesPerSecond) {
+        mParticlesPerSecond = Math.max(0, particlesPerSecond);
+    }
+
+    public float getRate() {
+        return mParticlesPerSecond;
+    }
+
+    /**
+     * Scale the rate by the curve over the given duration since the start, the rate then stays at its
+     * value at the end of the curve.
+     *
+     * @param curve null for a constant rate
+     */
+    public void setRateCurve(Curve curve, long durationMilis) {
+        mRateCurve = curve;
+        mCurveDurationMilis = Math.max(1, durationMilis);
+    }
+
+    /**
+     * Start again from time 0, the first particle is emitted by the first update.
+     */
+    public void reset() {
+        mAccumulator = 1;
+        mLastMilis = -1;
+    }
+
+    /**
+     * Jump to the given time as if every update since the start, the last one at that time, had run at the
+     * given scale, in a time that doesn't depend on how far the jump goes. The next {@link #advance}
+     * continues from there.
+     *
+     * @param miliseconds time of the last update, negative for none at all like {@link #reset()}
+     * @return particles emitted since the start, including the one of the first update
+     */
+    public long seek(long miliseconds, float scale) {
+        reset();
+        if (miliseconds < 0)
+            return 0;
+        double due = mAccumulator + integrateRate(miliseconds) * scale / 1000;
+        long emitted = (long) due;
+        mAccumulator = (float) (due - emitted);
+        mLastMilis = miliseconds;
+        return emitted;
+    }
+
+    /**
+     * @return the rate integrated from 0 to the given time, in particles per second times miliseconds
+     */
+    private double integrateRate(long miliseconds) {
+        if (mRateCurve == null)
+            return (double) mParticlesPerSecond * miliseconds;
+        long curveMilis = Math.min(miliseconds, mCurveDurationMilis);
+        double sum = 0;
+        for (int i = 0; i < CURVE_INTEGRATION_STEPS; i++) {
+            float middle = (i + 0.5f) / CURVE_INTEGRATION_STEPS * curveMilis / mCurveDurationMilis;
+            sum += mRateCurve.getInterpolation(middle);
+        }
+        // The rate stays at the end of the curve
+        double integral = sum / CURVE_INTEGRATION_STEPS * curveMilis
+                + (double) (miliseconds - curveMilis) * mRateCurve.getInterpolation(1);
+        return mParticlesPerSecond * integral;
+    }
+
+    /**
+     * @param miliseconds time since the start, never smaller than in the previous call
+     * @param scale       factor applied to the rate, see {@link QualityGovernor}
+     * @return particles due since the previous call
+     */
+    public int advance(long miliseconds, float scale) {
+        if (mLastMilis < 0) {
+            // Nothing elapsed before the first update
+            mLastMilis = miliseconds;
+        }
+        long elapsed = miliseconds - mLastMilis;
+        float rate = mParticlesPerSecond * scale;
+        if (mRateCurve != null) {
+            // Rate in the middle of the interval
+            float middle = (mLastMilis + miliseconds) / 2f / mCurveDurationMilis;
+            rate *= mRateCurve.getInterpolation(Math.min(middle, 1));
+        }
+        mLastMilis = miliseconds;
+        mAccumulator += rate * elapsed / 1000f;
+        int due = (int) mAccumulator;
+        mAccumulator -= due;
+        return due;
+    }
+}
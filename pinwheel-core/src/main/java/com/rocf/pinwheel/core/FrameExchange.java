@@ -0,0 +1,56 @@
+package com.rocf.pinwheel.core;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free triple buffer of {@link ParticleFrame}s between one writer (the simulation) and one reader
+ * (the drawing thread).
+ * <p/>
+ * The writer fills its back frame and swaps it into the shared slot, the reader swaps the shared slot
+ * with its front frame when a newer one was published. Each side owns its frame exclusively in between,
+ * so neither ever waits on the other; the reader simply keeps drawing the last completed frame.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class FrameExchange {
+
+    private final AtomicReference<ParticleFrame> mShared;
+    //owned by the writer
+    private ParticleFrame mBack;
+    //owned by the reader
+    private ParticleFrame mFront;
+
+    public FrameExchange(int capacity) {
+        mFront = new ParticleFrame(capacity);
+        mShared = new AtomicReference<ParticleFrame>(new ParticleFrame(capacity));
+        mBack = new ParticleFrame(capacity);
+    }
+
+    /**
+     * @return the frame the writer may fill, valid until {@link #publish()}
+     */
+    public ParticleFrame back() {
+        return mBack;
+    }
+
+    /**
+     * Publishes the back frame and takes the shared one to write the next frame into.
+     */
+    public void publish() {
+        mBack.mFresh = true;
+        mBack = mShared.getAndSet(mBack);
+    }
+
+    /**
+     * @return the latest published frame, valid until the next call
+     */
+    public ParticleFrame acquire() {
+        // The writer only ever replaces the shared frame with a fresher one,
+        // so a fresh frame seen here can't turn stale before the swap
+        if (mShared.get().mFresh) {
+            mFront.mFresh = false;
+            mFront = mShared.getAndSet(mFront);
+        }
+        return mFront;
+    }
+}
@@ -0,0 +1,104 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * Drops the particles that would draw nothing from a {@link ParticleFrame}: alpha or scale below a
+ * threshold, or a sprite entirely outside the clip bounds. It judges the values as they are drawn,
+ * after interpolation.
+ * <p/>
+ * Culled particles keep running by default, because the modifiers may bring them back (the alpha of
+ * {@link AlphaKernel} starts below 0 and rises). With {@link #setRetireCulled(boolean)} they are stopped
+ * instead and their slot returns to the pool on the next update, which only suits effects whose
+ * particles never come back once invisible.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class ParticleCuller {
+
+    //drawn alpha is truncated to an int, below 1 nothing is drawn
+    private float mMinAlpha = 1;
+    private float mMinScale = 0;
+    private boolean mRetireCulled;
+
+    private boolean mClipped;
+    private float mClipLeft;
+    private float mClipTop;
+    private float mClipRight;
+    private float mClipBottom;
+    private float mHalfWidth;
+    private float mHalfHeight;
+
+    private int mCulledCount;
+
+    /**
+     * @param minAlpha particles with a lower alpha are culled
+     * @param minScale particles with a scale at or below this are culled
+     */
+    public ParticleCuller setThresholds(float minAlpha, float minScale) {
+        mMinAlpha = minAlpha;
+        mMinScale = minScale;
+        return this;
+    }
+
+    /**
+     * Culls the particles whose sprite is entirely outside these bounds.
+     *
+     * @param halfWidth  half the sprite width, the particle position is its top left corner
+     * @param halfHeight half the sprite height
+     */
+    public ParticleCuller setClip(float left, float top, float right, float bottom, float halfWidth, float halfHeight) {
+        mClipped = true;
+        mClipLeft = left;
+        mClipTop = top;
+        mClipRight = right;
+        mClipBottom = bottom;
+        mHalfWidth = halfWidth;
+        mHalfHeight = halfHeight;
+        return this;
+    }
+
+    public ParticleCuller clearClip() {
+        mClipped = false;
+        return this;
+    }
+
+    /**
+     * @param retire true to stop the culled particles so that their slot can be reused
+     */
+    public ParticleCuller setRetireCulled(boolean retire) {
+        mRetireCulled = retire;
+        return this;
+    }
+
+    /**
+     * @return particles culled from the last frame
+     */
+    public int getCulledCount() {
+        return mCulledCount;
+    }
+
+    void beginFrame() {
+        mCulledCount = 0;
+    }
+
+    /**
+     * @return true if the particle of the slot is drawn with these values
+     */
+    boolean accept(ParticleStore store, int slot, float x, float y, float scale, float alpha) {
+        if (alpha >= mMinAlpha && scale > mMinScale && (!mClipped || inClip(x, y, scale))) {
+            return true;
+        }
+        mCulledCount++;
+        if (mRetireCulled)
+            store.mRunning[slot] = false;
+        return false;
+    }
+
+    private boolean inClip(float x, float y, float scale) {
+        float halfWidth = mHalfWidth * Math.abs(scale);
+        float halfHeight = mHalfHeight * Math.abs(scale);
+        float centerX = x + mHalfWidth;
+        float centerY = y + mHalfHeight;
+        return centerX + halfWidth >= mClipLeft && centerX - halfWidth <= mClipRight
+                && centerY + halfHeight >= mClipTop && centerY - halfHeight <= mClipBottom;
+    }
+}
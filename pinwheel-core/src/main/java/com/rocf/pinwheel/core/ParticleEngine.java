@@ -0,0 +1,561 @@
+package com.rocf.pinwheel.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The particle simulation without any rendering: emits particles from the pool of a {@link ParticleStore},
+ * initializes them, integrates their motion and runs the modifiers over them.
+ * <p/>
+ * Time is given in miliseconds since the emission started, the caller decides how it advances
+ * (vsync, fixed steps, a benchmark loop). An engine must only be used by one thread at a time,
+ * except for {@link #stopEmiting(long)}.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class ParticleEngine {
+
+    /**
+     * Particles due while the ring buffer is full are dropped, see {@link #setOverflowPolicy(int)}
+     */
+    public static final int OVERFLOW_DROP_NEWEST = 0;
+    /**
+     * The oldest particles make room for the particles due while the ring buffer is full
+     */
+    public static final int OVERFLOW_RECYCLE_OLDEST = 1;
+
+    //smaller chunks cost more in scheduling than they gain
+    private static final int MIN_PARALLEL_CHUNK = 1024;
+    //a seek emits the live particles on a grid of this step from time 0, the updates of a 60fps run
+    static final int SEEK_STEP_MILIS = 16;
+    //particles of bursts are numbered from here on, apart from the emitted ones
+    private static final long BURST_INDEX_BASE = 1L << 62;
+    //channels of ParticleStore.random
+    private static final int CHANNEL_EMITER_X = 0;
+    private static final int CHANNEL_EMITER_Y = 1;
+
+    private final ParticleStore mStore;
+    private final Random mRandom;
+    private final List<BatchModifier> mModifiers = new ArrayList<BatchModifier>();
+    private final List<SeededModifier> mSeededModifiers = new ArrayList<SeededModifier>();
+    private final List<BatchInitializer> mInitializers = new ArrayList<BatchInitializer>();
+    private final int mTimeToLive;
+
+    private final EmissionController mEmission = new EmissionController(0);
+    private volatile long mEmitingTime = -1;
+    private long mSpawnsRefused;
+    private int mEmissionDeficit;
+
+    //the seed of a particle derives from this and its index, see particleSeed
+    private int mSeed;
+    //particles due since the emission started, the index of the next emitted particle
+    private long mEmittedCount;
+    private long mBurstCount;
+
+    private int mOverflowPolicy = OVERFLOW_DROP_NEWEST;
+
+    //quality knobs, see QualityGovernor
+    private float mEmissionScale = 1;
+    private int mLiveCap;
+    private int mModifierStride = 1;
+    private int mStrideOffset;
+    //live slots the modifiers run on when the stride skips some of them, and their ages
+    private int[] mStrideSlots;
+    private long[] mStrideAges;
+
+    //bursts waiting for their time, in the order they were requested
+    private long[] mBurstTimes = new long[4];
+    private int[] mBurstCounts = new int[4];
+    private int mPendingBursts;
+
+    //parallel update, off while the pool is null
+    private ForkJoinPool mUpdatePool;
+    private int mParallelThreshold;
+
+    //range of the top left corner of new particles
+    private int mEmiterXMin;
+    private int mEmiterXMax;
+    private int mEmiterYMin;
+    private int mEmiterYMax;
+
+    /**
+     * @param capacity   size of the particle pool
+     * @param timeToLive life time of every particle in miliseconds
+     */
+    public ParticleEngine(int capacity, int timeToLive, Random random) {
+        mStore = new ParticleStore(capacity);
+        mTimeToLive = timeToLive;
+        mRandom = random;
+        mLiveCap = capacity;
+        mSeed = random.nextInt();
+    }
+
+    public ParticleStore getStore() {
+        return mStore;
+    }
+
+    /**
+     * @return how many particles could not be emitted when they were due because the pool was exhausted,
+     * since the engine was created
+     */
+    public long getSpawnsRefused() {
+        return mSpawnsRefused;
+    }
+
+    /**
+     * @return how many particles due by the last update were not emitted, because of the pool or the live cap
+     */
+    public int getEmissionDeficit() {
+        return mEmissionDeficit;
+    }
+
+    /**
+     * Same seed, same particles: the n-th particle emitted gets the same random values on every run.
+     * By default the seed is drawn from the {@link Random} of the engine.
+     */
+    public void setSeed(int seed) {
+        mSeed = seed;
+    }
+
+    public ParticleEngine addModifier(BatchModifier modifier) {
+        mModifiers.add(modifier);
+        if (modifier instanceof SeededModifier)
+            mSeededModifiers.add((SeededModifier) modifier);
+        return this;
+    }
+
+    public ParticleEngine addInitializer(BatchInitializer initializer) {
+        mInitializers.add(initializer);
+        return this;
+    }
+
+    /**
+     * Keep the particles in a ring buffer in the order they are emitted instead of a pool with a free list,
+     * see {@link ParticleStore#setRingBuffer(boolean)}: as every particle of the engine has the same time
+     * to live, expiry is only moving the head of the ring, live particles are neither tested nor moved.
+     * Best for particles that live their full time to live, a modifier that stops a particle early
+     * doesn't free its slot before the particles started earlier expired. Only while no particle is live.
+     */
+    public void setRingBuffer(boolean ringBuffer) {
+        mStore.setRingBuffer(ringBuffer);
+    }
+
+    /**
+     * What happens to the particles due while the ring buffer is full or at the live cap,
+     * {@link #OVERFLOW_DROP_NEWEST} (the default) or {@link #OVERFLOW_RECYCLE_OLDEST}.
+     * The pool without ring buffer always drops them.
+     */
+    public void setOverflowPolicy(int policy) {
+        if (policy != OVERFLOW_DROP_NEWEST && policy != OVERFLOW_RECYCLE_OLDEST)
+            throw new IllegalArgumentException("unknown overflow policy " + policy);
+        mOverflowPolicy = policy;
+    }
+
+    public int getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * Scales the emission rate from the next update on, 1 emits at the full rate.
+     */
+    public void setEmissionScale(float scale) {
+        mEmissionScale = scale;
+    }
+
+    public float getEmissionScale() {
+        return mEmissionScale;
+    }
+
+    /**
+     * Limits the live particles below the pool capacity, the particles due above the cap are dropped.
+     */
+    public void setLiveCap(int liveCap) {
+        mLiveCap = Math.max(0, Math.min(liveCap, mStore.mCapacity));
+    }
+
+    public int getLiveCap() {
+        return mLiveCap;
+    }
+
+    /**
+     * Runs the modifiers on one particle out of stride per update, each particle in turn, so every
+     * particle is modified at least every stride updates. Particles are always modified on the update
+     * they are emitted. 1 (the default) modifies all the particles on every update.
+     */
+    public void setModifierStride(int stride) {
+        mModifierStride = Math.max(1, stride);
+        if (mModifierStride > 1 && mStrideSlots == null) {
+            mStrideSlots = new int[mStore.mCapacity];
+            mStrideAges = new long[mStore.mCapacity];
+        }
+    }
+
+    public int getModifierStride() {
+        return mModifierStride;
+    }
+
+    /**
+     * Integrate and modify the particles in chunks on a fork/join pool once there are at least threshold
+     * live particles, below it the update stays on the calling thread. The calling thread waits for all
+     * the chunks, so the update is still over when {@link #update(long)} returns.
+     * <p/>
+     * The modifiers are then called from several threads at once, on disjoint particles.
+     *
+     * @param pool      the pool to run the chunks on, null turns the parallel update off
+     * @param threshold live particles from which the update runs in parallel
+     */
+    public void setParallelUpdate(ForkJoinPool pool, int threshold) {
+        mUpdatePool = pool;
+        mParallelThreshold = Math.max(1, threshold);
+    }
+
+    /**
+     * Where new particles appear, as the range of their top left corner.
+     */
+    public void setEmiter(int xMin, int xMax, int yMin, int yMax) {
+        mEmiterXMin = xMin;
+        mEmiterXMax = xMax;
+        mEmiterYMin = yMin;
+        mEmiterYMax = yMax;
+    }
+
+    /**
+     * Starts emitting at the given rate from time 0 on, until {@link #stopEmiting(long)}.
+     * The rate is independent of the pool capacity, particles due while the pool is exhausted are dropped.
+     */
+    public void startEmiting(float particlesPerSecond) {
+        mEmission.setRate(particlesPerSecond);
+        mEmission.reset();
+        mEmissionDeficit = 0;
+        mEmittedCount = 0;
+        mEmitingTime = -1; // Meaning infinite
+    }
+
+    /**
+     * The emission rate and its optional curve over time.
+     */
+    public EmissionController getEmission() {
+        return mEmission;
+    }
+
+    /**
+     * No particle is emitted after the given time, the live ones run until their time to live expires.
+     * May be called from any thread.
+     */
+    public void stopEmiting(long miliseconds) {
+        mEmitingTime = miliseconds;
+    }
+
+    /**
+     * Activates up to count particles from the pool in one pass per initializer, numbered like the
+     * particles of a {@link #burst(int, long)}.
+     *
+     * @param delay time the particles start at
+     * @return the number of particles activated
+     */
+    public int activateParticles(int count, long delay) {
+        int activated = activateParticles(count, delay, BURST_INDEX_BASE + mBurstCount);
+        mBurstCount += activated;
+        return activated;
+    }
+
+    /**
+     * @param firstIndex index of the first particle, the seed of every particle derives from its index
+     */
+    private int activateParticles(int count, long delay, long firstIndex) {
+        final ParticleStore store = mStore;
+        final int from = store.mFirstActive + store.mActiveCount;
+        for (int n = 0; n < count; n++) {
+            int slot = store.obtain();
+            if (slot < 0)
+                break;
+            store.mScale[slot] = 1;
+            store.mAlpha[slot] = 255;
+        }
+        final int to = store.mFirstActive + store.mActiveCount;
+        final int[] activeSlots = store.mActiveSlots;
+        final int[] seeds = store.mSeed;
+        for (int i = from; i < to; i++) {
+            seeds[activeSlots[i]] = particleSeed(firstIndex + i - from);
+        }
+        // Initialization goes before configuration, scale is required before can be configured properly
+        for (int i = 0; i < mInitializers.size(); i++) {
+            mInitializers.get(i).initBatch(store, activeSlots, from, to, mRandom);
+        }
+        for (int i = from; i < to; i++) {
+            int slot = activeSlots[i];
+            float initialX = getFromRange(mEmiterXMin, mEmiterXMax, seeds[slot], CHANNEL_EMITER_X);
+            float initialY = getFromRange(mEmiterYMin, mEmiterYMax, seeds[slot], CHANNEL_EMITER_Y);
+            store.mInitialX[slot] = initialX;
+            store.mInitialY[slot] = initialY;
+            store.mX[slot] = initialX;
+            store.mY[slot] = initialY;
+            store.mTimeToLive[slot] = mTimeToLive;
+            store.mRunning[slot] = true;
+            store.mStartingMilisecond[slot] = delay;
+        }
+        for (int i = 0; i < mSeededModifiers.size(); i++) {
+            mSeededModifiers.get(i).onSpawn(store, activeSlots, from, to);
+        }
+        return to - from;
+    }
+
+    private static int getFromRange(int minValue, int maxValue, int seed, int channel) {
+        if (minValue == maxValue) {
+            return minValue;
+        }
+        return (int) (ParticleStore.random(seed, channel) * (maxValue - minValue)) + minValue;
+    }
+
+    /**
+     * Under {@link #OVERFLOW_RECYCLE_OLDEST} retires the oldest particles of the ring buffer so that
+     * count new ones stay within the limit.
+     */
+    private void recycleOldest(int count, int limit) {
+        final ParticleStore store = mStore;
+        if (mOverflowPolicy != OVERFLOW_RECYCLE_OLDEST || !store.isRingBuffer())
+            return;
+        int excess = store.mActiveCount + Math.min(count, limit) - limit;
+        if (excess > 0)
+            store.retireOldest(excess);
+    }
+
+    private int particleSeed(long index) {
+        // SplitMix64 finalizer, neighbouring indices get unrelated seeds
+        long z = mSeed + index * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (z ^ (z >>> 31));
+    }
+
+    /**
+     * Emits count particles at once on the first update at or after the given time: the slots are
+     * reserved in one pool pass and initialized in one pass per initializer. Particles that find the
+     * pool exhausted are refused, see {@link #getSpawnsRefused()}.
+     *
+     * @param atMilis time of the burst, 0 for the next update
+     */
+    public void burst(int count, long atMilis) {
+        if (count <= 0)
+            return;
+        if (mPendingBursts == mBurstTimes.length) {
+            mBurstTimes = Arrays.copyOf(mBurstTimes, mPendingBursts * 2);
+            mBurstCounts = Arrays.copyOf(mBurstCounts, mPendingBursts * 2);
+        }
+        mBurstTimes[mPendingBursts] = atMilis;
+        mBurstCounts[mPendingBursts] = count;
+        mPendingBursts++;
+    }
+
+    public boolean hasPendingBursts() {
+        return mPendingBursts > 0;
+    }
+
+    /**
+     * @return true if updates at or after the given time change nothing until the engine is started again:
+     * no live particle, no pending burst, and the emission stopped or at a rate of 0, or an empty pool
+     */
+    public boolean isIdle(long miliseconds) {
+        if (mStore.mActiveCount > 0)
+            return false;
+        if (mStore.mCapacity == 0)
+            return true;
+        boolean emitting = (mEmitingTime > 0 && miliseconds < mEmitingTime) || mEmitingTime == -1;
+        return mPendingBursts == 0 && (!emitting || mEmission.getRate() == 0);
+    }
+
+    private void emitBursts(long miliseconds) {
+        int kept = 0;
+        for (int i = 0; i < mPendingBursts; i++) {
+            if (mBurstTimes[i] > miliseconds) {
+                mBurstTimes[kept] = mBurstTimes[i];
+                mBurstCounts[kept] = mBurstCounts[i];
+                kept++;
+                continue;
+            }
+            // Started now rather than at their time, a late update doesn't age them
+            int count = mBurstCounts[i];
+            recycleOldest(count, mStore.mCapacity);
+            int activated = activateParticles(count, miliseconds);
+            mSpawnsRefused += count - activated;
+        }
+        mPendingBursts = kept;
+    }
+
+    /**
+     * Emits the particles due by the given time, moves all live particles there, runs the modifiers
+     * and retires the particles that expired or were stopped.
+     */
+    public void update(long miliseconds) {
+        if (mPendingBursts > 0)
+            emitBursts(miliseconds);
+        emitDue(miliseconds);
+        final ParticleStore store = mStore;
+        final ForkJoinPool pool = mUpdatePool;
+        if (pool != null && store.mActiveCount >= mParallelThreshold) {
+            updateParallel(pool, miliseconds);
+        } else {
+            store.integrateAll(miliseconds);
+            if (mModifierStride > 1) {
+                applyModifiers(mStrideSlots, mStrideAges, 0, collectStrided());
+            } else {
+                // One pass over all the particles per modifier
+                applyModifiers(store.mActiveSlots, store.mAges, store.mFirstActive, store.mFirstActive + store.mActiveCount);
+            }
+        }
+        store.retireStopped();
+    }
+
+    private void emitDue(long miliseconds) {
+        if ((mEmitingTime > 0 && miliseconds < mEmitingTime) || mEmitingTime == -1) { // This emiter should emit
+            // One batch for all the particles due since the last update
+            int due = mEmission.advance(miliseconds, mEmissionScale);
+            recycleOldest(due, mLiveCap);
+            final ParticleStore store = mStore;
+            // The live cap drops particles on purpose, what the pool can't take is refused
+            int refused = Math.max(0, due - (store.mCapacity - store.mActiveCount));
+            int wanted = Math.min(due, Math.max(0, mLiveCap - store.mActiveCount));
+            int activated = wanted > 0 ? activateParticles(wanted, miliseconds, mEmittedCount) : 0;
+            // Dropped particles keep their index, the following ones stay the same particles
+            mEmittedCount += due;
+            mSpawnsRefused += refused;
+            mEmissionDeficit = due - activated;
+        } else {
+            mEmissionDeficit = 0;
+        }
+    }
+
+    /**
+     * Puts the live particles where an uninterrupted emission puts them at the given time, without
+     * replaying the time before: the emission jumps to one time to live earlier, the particles still alive
+     * at the given time are emitted at their own time from there and every particle is then evaluated at
+     * its age, position and modifiers alike. The cost depends on the live particles only, not on how far
+     * the time is, and the time may go backwards.
+     * <p/>
+     * The particles are emitted at the multiples of 16 miliseconds, where a run updated every 16 miliseconds
+     * emits them too: seeking gets exactly the particles of such a run, at other update rates a particle may
+     * start up to 16 miliseconds later than in the run.
+     * <p/>
+     * The particles are the same on every seek as the seed of a particle derives from its index. Modifiers
+     * that seed their state on the first update instead of being a {@link SeededModifier} don't get it.
+     * Bursts are not replayed, the pending ones go off on the next update as usual.
+     *
+     * @param miliseconds time since the emission started
+     */
+    public void seek(long miliseconds) {
+        final ParticleStore store = mStore;
+        store.retireAll();
+        long from = Math.max(0, miliseconds - mTimeToLive);
+        // The first step on the grid where the particles are still alive
+        long first = (from + SEEK_STEP_MILIS - 1) / SEEK_STEP_MILIS * SEEK_STEP_MILIS;
+        // The emission stands at the step before, whose particles have expired
+        mEmittedCount = mEmission.seek(first - SEEK_STEP_MILIS, mEmissionScale);
+        long spawnsRefused = mSpawnsRefused;
+        for (long time = first; time < miliseconds; time += SEEK_STEP_MILIS) {
+            emitDue(time);
+        }
+        // Rebuilding the particles is not a shortage of the pool
+        mSpawnsRefused = spawnsRefused;
+        // Every particle gets its modifiers, the stride would leave most at their spawn state
+        int stride = mModifierStride;
+        mModifierStride = 1;
+        update(miliseconds);
+        mModifierStride = stride;
+    }
+
+    private void applyModifiers(int[] slots, long[] ages, int from, int to) {
+        for (int i = 0; i < mModifiers.size(); i++) {
+            mModifiers.get(i).applyBatch(mStore, slots, ages, from, to);
+        }
+    }
+
+    private void updateParallel(ForkJoinPool pool, long miliseconds) {
+        final ParticleStore store = mStore;
+        final int from = store.mFirstActive;
+        final int to = from + store.mActiveCount;
+        // A few chunks per worker so that a slow one doesn't hold up the frame
+        final int chunk = Math.max(MIN_PARALLEL_CHUNK, store.mActiveCount / (pool.getParallelism() * 4));
+        if (mModifierStride > 1) {
+            pool.invoke(new UpdateChunk(this, miliseconds, store.mActiveSlots, store.mAges, from, to, chunk, true, false));
+            int strided = collectStrided();
+            pool.invoke(new UpdateChunk(this, miliseconds, mStrideSlots, mStrideAges, 0, strided, chunk, false, true));
+        } else {
+            pool.invoke(new UpdateChunk(this, miliseconds, store.mActiveSlots, store.mAges, from, to, chunk, true, true));
+        }
+    }
+
+    /**
+     * Collects the particles the modifiers run on this update into the stride arrays.
+     *
+     * @return the number of particles collected
+     */
+    private int collectStrided() {
+        final ParticleStore store = mStore;
+        final int[] activeSlots = store.mActiveSlots;
+        final long[] ages = store.mAges;
+        final int stride = mModifierStride;
+        final int offset = mStrideOffset;
+        final int end = store.mFirstActive + store.mActiveCount;
+        int count = 0;
+        for (int i = store.mFirstActive; i < end; i++) {
+            int slot = activeSlots[i];
+            // New particles get their modifier values before they are first drawn
+            if (ages[i] == 0 || (slot + offset) % stride == 0) {
+                mStrideSlots[count] = slot;
+                mStrideAges[count] = ages[i];
+                count++;
+            }
+        }
+        mStrideOffset = (offset + 1) % stride;
+        return count;
+    }
+
+    /**
+     * Integrates and/or modifies a range of particles, split in halves down to the chunk size.
+     */
+    private static final class UpdateChunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ParticleEngine mEngine;
+        private final long mMiliseconds;
+        private final int[] mSlots;
+        private final long[] mAges;
+        private final int mFrom;
+        private final int mTo;
+        private final int mChunk;
+        private final boolean mIntegrate;
+        private final boolean mModify;
+
+        UpdateChunk(ParticleEngine engine, long miliseconds, int[] slots, long[] ages, int from, int to, int chunk,
+                    boolean integrate, boolean modify) {
+            mEngine = engine;
+            mMiliseconds = miliseconds;
+            mSlots = slots;
+            mAges = ages;
+            mFrom = from;
+            mTo = to;
+            mChunk = chunk;
+            mIntegrate = integrate;
+            mModify = modify;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= mChunk) {
+                if (mIntegrate)
+                    mEngine.mStore.integrateRange(mMiliseconds, mFrom, mTo);
+                if (mModify)
+                    mEngine.applyModifiers(mSlots, mAges, mFrom, mTo);
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new UpdateChunk(mEngine, mMiliseconds, mSlots, mAges, mFrom, middle, mChunk, mIntegrate, mModify),
+                    new UpdateChunk(mEngine, mMiliseconds, mSlots, mAges, middle, mTo, mChunk, mIntegrate, mModify));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * What the renderer needs of one simulated frame: position, scale and alpha of every visible particle,
+ * packed densely in [0, {@link #mCount}).
+ * <p/>
+ * Frames are handed from the simulation to the drawing thread by a {@link FrameExchange} and are never
+ * written while the drawing thread holds them.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class ParticleFrame {
+
+    public final float[] mX;
+    public final float[] mY;
+    public final float[] mScale;
+    public final float[] mAlpha;
+    public int mCount;
+
+    //union of the drawn particles, see computeBounds
+    public float mLeft;
+    public float mTop;
+    public float mRight;
+    public float mBottom;
+
+    //set by the writer when published, cleared by the reader when it takes the frame
+    volatile boolean mFresh;
+
+    public ParticleFrame(int capacity) {
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mScale = new float[capacity];
+        mAlpha = new float[capacity];
+    }
+
+    /**
+     * Copies the running particles of the store into this frame.
+     *
+     * @param culler drops the particles that would not be visible, may be null
+     */
+    public void copyFrom(ParticleStore store, ParticleCuller culler) {
+        final int[] activeSlots = store.mActiveSlots;
+        final int end = store.mFirstActive + store.mActiveCount;
+        if (culler != null)
+            culler.beginFrame();
+        int count = 0;
+        for (int i = store.mFirstActive; i < end; i++) {
+            int slot = activeSlots[i];
+            if (!store.mRunning[slot])
+                continue;
+            mX[count] = store.mX[slot];
+            mY[count] = store.mY[slot];
+            mScale[count] = store.mScale[slot];
+            mAlpha[count] = store.mAlpha[slot];
+            if (culler == null || culler.accept(store, slot, mX[count], mY[count], mScale[count], mAlpha[count]))
+                count++;
+        }
+        mCount = count;
+    }
+
+    /**
+     * Copies the running particles of the store into this frame, blended between their previous
+     * and current state.
+     *
+     * @param interpolation 0 for the previous state, 1 for the current one
+     * @param culler        drops the particles that would not be visible, may be null
+     */
+    public void interpolateFrom(ParticleStore store, float interpolation, ParticleCuller culler) {
+        final int[] activeSlots = store.mActiveSlots;
+        final int end = store.mFirstActive + store.mActiveCount;
+        if (culler != null)
+            culler.beginFrame();
+        int count = 0;
+        for (int i = store.mFirstActive; i < end; i++) {
+            int slot = activeSlots[i];
+            if (!store.mRunning[slot])
+                continue;
+            if (store.mHasPrevious[slot]) {
+                mX[count] = lerp(store.mPreviousX[slot], store.mX[slot], interpolation);
+                mY[count] = lerp(store.mPreviousY[slot], store.mY[slot], interpolation);
+                mScale[count] = lerp(store.mPreviousScale[slot], store.mScale[slot], interpolation);
+                mAlpha[count] = lerp(store.mPreviousAlpha[slot], store.mAlpha[slot], interpolation);
+            } else {
+                mX[count] = store.mX[slot];
+                mY[count] = store.mY[slot];
+                mScale[count] = store.mScale[slot];
+                mAlpha[count] = store.mAlpha[slot];
+            }
+            if (culler == null || culler.accept(store, slot, mX[count], mY[count], mScale[count], mAlpha[count]))
+                count++;
+        }
+        mCount = count;
+    }
+
+    /**
+     * Computes the union of the particles as drawn, each one is the sprite scaled around its center.
+     * The bounds are empty when the frame holds no particle.
+     */
+    public void computeBounds(float halfWidth, float halfHeight) {
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < mCount; i++) {
+            float scale = Math.abs(mScale[i]);
+            float centerX = mX[i] + halfWidth;
+            float centerY = mY[i] + halfHeight;
+            left = Math.min(left, centerX - halfWidth * scale);
+            right = Math.max(right, centerX + halfWidth * scale);
+            top = Math.min(top, centerY - halfHeight * scale);
+            bottom = Math.max(bottom, centerY + halfHeight * scale);
+        }
+        if (mCount == 0) {
+            left = top = right = bottom = 0;
+        }
+        mLeft = left;
+        mTop = top;
+        mRight = right;
+        mBottom = bottom;
+    }
+
+    private static float lerp(float from, float to, float fraction) {
+        return from + (to - from) * fraction;
+    }
+}
@@ -0,0 +1,324 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * Structure-of-arrays storage behind {@link ParticleEngine}.
+ * <p/>
+ * Every attribute of a particle lives in its own primitive array and a particle is nothing more
+ * than a slot index into them, so the update loop walks contiguous memory instead of chasing one
+ * heap object per particle. {@link BatchModifier}s and {@link BatchInitializer}s work straight on the arrays.
+ * <p/>
+ * The store is also the particle pool: free slots sit on an index based free list and the live
+ * slots are kept dense at the front of {@link #mActiveSlots}, a dead particle is replaced by the
+ * last live one, so both {@link #obtain()} and {@link #retire(int)} are constant time.
+ * <p/>
+ * In ring buffer mode ({@link #setRingBuffer(boolean)}) the slots are taken in a circle instead, the live
+ * particles stay in the order they started. With one time to live for all, the expired particles are then
+ * always the oldest ones: expiry only moves the head of the ring past them, without testing or moving
+ * the younger particles.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class ParticleStore {
+
+    public final int mCapacity;
+
+    public final float[] mX;
+    public final float[] mY;
+    public final float[] mInitialX;
+    public final float[] mInitialY;
+    public final float[] mSpeedX;
+    public final float[] mSpeedY;
+    public final float[] mAccelerationX;
+    public final float[] mAccelerationY;
+    public final float[] mAlpha;
+    public final float[] mScale;
+
+    //per particle state of the modifiers
+    public final int[] mAlphaInitialValue;
+    public final int[] mAlphaFinalValue;
+    public final int[] mAlphaValueIncrement;
+    public final float[] mScaleInitialValue;
+    public final float[] mScaleFinalValue;
+
+    //state before the last fixed step, used to interpolate between two steps
+    public final float[] mPreviousX;
+    public final float[] mPreviousY;
+    public final float[] mPreviousAlpha;
+    public final float[] mPreviousScale;
+    //false until the slot went through one step, it has no previous state yet
+    public final boolean[] mHasPrevious;
+
+    public final long[] mStartingMilisecond;
+    public final int[] mTimeToLive;
+    public final boolean[] mRunning;
+    //the random values of a particle derive from its seed only, see random(int, int)
+    public final int[] mSeed;
+
+    //live slots in [mFirstActive, mFirstActive + mActiveCount), free slots in [0, mFreeCount)
+    public int[] mActiveSlots;
+    public int mActiveCount;
+    //index of the oldest live slot in ring buffer mode, 0 otherwise
+    public int mFirstActive;
+    //age of the particle at the same index of mActiveSlots, filled by integrateAll
+    public long[] mAges;
+    private final int[] mFreeSlots;
+    private int mFreeCount;
+    private boolean mRingBuffer;
+
+    public ParticleStore(int capacity) {
+        mCapacity = capacity;
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mInitialX = new float[capacity];
+        mInitialY = new float[capacity];
+        mSpeedX = new float[capacity];
+        mSpeedY = new float[capacity];
+        mAccelerationX = new float[capacity];
+        mAccelerationY = new float[capacity];
+        mAlpha = new float[capacity];
+        mScale = new float[capacity];
+        mAlphaInitialValue = new int[capacity];
+        mAlphaFinalValue = new int[capacity];
+        mAlphaValueIncrement = new int[capacity];
+        mScaleInitialValue = new float[capacity];
+        mScaleFinalValue = new float[capacity];
+        mPreviousX = new float[capacity];
+        mPreviousY = new float[capacity];
+        mPreviousAlpha = new float[capacity];
+        mPreviousScale = new float[capacity];
+        mHasPrevious = new boolean[capacity];
+        mStartingMilisecond = new long[capacity];
+        mTimeToLive = new int[capacity];
+        mRunning = new boolean[capacity];
+        mSeed = new int[capacity];
+        mActiveSlots = new int[capacity];
+        mAges = new long[capacity];
+        mFreeSlots = new int[capacity];
+        // Reversed so that the slots are handed out from 0 up
+        for (int i = 0; i < capacity; i++) {
+            mFreeSlots[i] = capacity - 1 - i;
+        }
+        mFreeCount = capacity;
+    }
+
+    /**
+     * A random value that only depends on the seed of a particle and the channel, so the same particle
+     * gets the same values whenever it is initialized, in whatever batch and order.
+     *
+     * @param channel tells apart the values drawn for one particle
+     * @return a value uniformly distributed in [0, 1)
+     */
+    public static float random(int seed, int channel) {
+        int h = seed + channel * 0x9E3779B9;
+        h = (h ^ (h >>> 16)) * 0x85EBCA6B;
+        h = (h ^ (h >>> 13)) * 0xC2B2AE35;
+        h ^= h >>> 16;
+        return (h >>> 8) * (1f / (1 << 24));
+    }
+
+    /**
+     * Switch between the free list pool and the ring buffer, only while no particle is live.
+     * <p/>
+     * In the ring buffer the particles must be obtained in the order they start and all of them
+     * must have the same time to live. A particle stopped before its time keeps its slot until it
+     * is the oldest one.
+     */
+    public void setRingBuffer(boolean ringBuffer) {
+        if (mActiveCount > 0)
+            throw new IllegalStateException("the pool mode can't change with " + mActiveCount + " live particles");
+        if (ringBuffer == mRingBuffer)
+            return;
+        mRingBuffer = ringBuffer;
+        mFirstActive = 0;
+        if (ringBuffer) {
+            // Twice the capacity, so the live range never wraps around the end of the array
+            mActiveSlots = new int[2 * mCapacity];
+            mAges = new long[2 * mCapacity];
+            for (int i = 0; i < mActiveSlots.length; i++) {
+                mActiveSlots[i] = i % mCapacity;
+            }
+        } else {
+            mActiveSlots = new int[mCapacity];
+            mAges = new long[mCapacity];
+        }
+    }
+
+    public boolean isRingBuffer() {
+        return mRingBuffer;
+    }
+
+    public boolean hasFreeSlot() {
+        return mRingBuffer ? mActiveCount < mCapacity : mFreeCount > 0;
+    }
+
+    /**
+     * Takes a slot from the free list and appends it to the live slots, or the slot after the
+     * youngest one in ring buffer mode.
+     *
+     * @return the slot, or -1 if the pool is exhausted
+     */
+    public int obtain() {
+        int slot;
+        if (mRingBuffer) {
+            if (mActiveCount == mCapacity)
+                return -1;
+            slot = mActiveSlots[mFirstActive + mActiveCount++];
+        } else {
+            if (mFreeCount == 0) {
+                return -1;
+            }
+            slot = mFreeSlots[--mFreeCount];
+            mActiveSlots[mActiveCount++] = slot;
+        }
+        mHasPrevious[slot] = false;
+        return slot;
+    }
+
+    /**
+     * Returns the live slot at the given index of {@link #mActiveSlots} to the free list.
+     * The last live slot is moved into its place, so the caller must look at the same index again.
+     * In ring buffer mode only the oldest particle can be retired, see {@link #retireOldest(int)}.
+     */
+    public void retire(int index) {
+        if (mRingBuffer) {
+            if (index != mFirstActive)
+                throw new IllegalStateException("the ring buffer only retires its oldest particle, at " + mFirstActive + " not " + index);
+            retireOldest(1);
+            return;
+        }
+        int slot = mActiveSlots[index];
+        mActiveSlots[index] = mActiveSlots[--mActiveCount];
+        mFreeSlots[mFreeCount++] = slot;
+        mRunning[slot] = false;
+    }
+
+    /**
+     * Moves the head of the ring buffer past its count oldest particles, ring buffer mode only.
+     */
+    public void retireOldest(int count) {
+        count = Math.min(count, mActiveCount);
+        if (count <= 0)
+            return;
+        for (int i = 0; i < count; i++) {
+            mRunning[mActiveSlots[mFirstActive + i]] = false;
+        }
+        mActiveCount -= count;
+        mFirstActive = (mFirstActive + count) % mCapacity;
+    }
+
+    public void retireAll() {
+        if (mRingBuffer) {
+            retireOldest(mActiveCount);
+            mFirstActive = 0;
+            return;
+        }
+        while (mActiveCount > 0) {
+            retire(mActiveCount - 1);
+        }
+    }
+
+    /**
+     * Remembers the current state of the live particles before a fixed step advances them.
+     */
+    public void savePrevious() {
+        final int end = mFirstActive + mActiveCount;
+        for (int i = mFirstActive; i < end; i++) {
+            int slot = mActiveSlots[i];
+            mPreviousX[slot] = mX[slot];
+            mPreviousY[slot] = mY[slot];
+            mPreviousAlpha[slot] = mAlpha[slot];
+            mPreviousScale[slot] = mScale[slot];
+            mHasPrevious[slot] = true;
+        }
+    }
+
+    /**
+     * Retires the particles that outlived their time to live or were stopped, and moves all others
+     * to their position at the given time. Afterwards {@link #mAges} holds the age of every live particle.
+     */
+    public void integrateAll(long miliseconds) {
+        if (mRingBuffer) {
+            integrateRing(miliseconds);
+            return;
+        }
+        final int[] activeSlots = mActiveSlots;
+        int i = 0;
+        while (i < mActiveCount) {
+            int slot = activeSlots[i];
+            long realMiliseconds = miliseconds - mStartingMilisecond[slot];
+            if (realMiliseconds > mTimeToLive[slot] || !mRunning[slot]) {
+                // The last live slot takes this index, so look at it again
+                retire(i);
+                continue;
+            }
+            mX[slot] = mInitialX[slot] + mSpeedX[slot] * realMiliseconds + mAccelerationX[slot] * realMiliseconds * realMiliseconds;
+            mY[slot] = mInitialY[slot] + mSpeedY[slot] * realMiliseconds + mAccelerationY[slot] * realMiliseconds * realMiliseconds;
+            mAges[i] = realMiliseconds;
+            i++;
+        }
+    }
+
+    private void integrateRing(long miliseconds) {
+        final int[] activeSlots = mActiveSlots;
+        // The oldest particles expire first, the ones after the first survivor are younger
+        int expired = 0;
+        while (expired < mActiveCount) {
+            int slot = activeSlots[mFirstActive + expired];
+            if (miliseconds - mStartingMilisecond[slot] <= mTimeToLive[slot] && mRunning[slot])
+                break;
+            expired++;
+        }
+        if (expired > 0)
+            retireOldest(expired);
+        final int end = mFirstActive + mActiveCount;
+        for (int i = mFirstActive; i < end; i++) {
+            int slot = activeSlots[i];
+            long realMiliseconds = miliseconds - mStartingMilisecond[slot];
+            mX[slot] = mInitialX[slot] + mSpeedX[slot] * realMiliseconds + mAccelerationX[slot] * realMiliseconds * realMiliseconds;
+            mY[slot] = mInitialY[slot] + mSpeedY[slot] * realMiliseconds + mAccelerationY[slot] * realMiliseconds * realMiliseconds;
+            mAges[i] = realMiliseconds;
+        }
+    }
+
+    /**
+     * Same as {@link #integrateAll(long)} for the live particles at [from, to) of {@link #mActiveSlots},
+     * except that the expired particles are only stopped: nothing moves in the arrays, so disjoint ranges
+     * can be integrated concurrently. {@link #retireStopped()} retires them afterwards.
+     */
+    public void integrateRange(long miliseconds, int from, int to) {
+        final int[] activeSlots = mActiveSlots;
+        for (int i = from; i < to; i++) {
+            int slot = activeSlots[i];
+            long realMiliseconds = miliseconds - mStartingMilisecond[slot];
+            if (realMiliseconds > mTimeToLive[slot])
+                mRunning[slot] = false;
+            mX[slot] = mInitialX[slot] + mSpeedX[slot] * realMiliseconds + mAccelerationX[slot] * realMiliseconds * realMiliseconds;
+            mY[slot] = mInitialY[slot] + mSpeedY[slot] * realMiliseconds + mAccelerationY[slot] * realMiliseconds * realMiliseconds;
+            mAges[i] = realMiliseconds;
+        }
+    }
+
+    /**
+     * Retires the particles a modifier stopped. The ring buffer only retires them once they are the
+     * oldest, until then they stay live but stopped and are not drawn.
+     */
+    public void retireStopped() {
+        if (mRingBuffer) {
+            int stopped = 0;
+            while (stopped < mActiveCount && !mRunning[mActiveSlots[mFirstActive + stopped]]) {
+                stopped++;
+            }
+            if (stopped > 0)
+                retireOldest(stopped);
+            return;
+        }
+        int i = 0;
+        while (i < mActiveCount) {
+            if (mRunning[mActiveSlots[i]]) {
+                i++;
+            } else {
+                retire(i);
+            }
+        }
+    }
+}
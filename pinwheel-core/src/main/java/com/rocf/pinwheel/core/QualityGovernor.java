@@ -0,0 +1,116 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * Scales the particle load of a {@link ParticleEngine} to the frame budget: the quality drops when the
+ * measured cost of the particles stays above the upper threshold and rises back in small steps while it
+ * stays below the lower one.
+ * <p/>
+ * The quality is a fraction in [floor, ceiling] that scales the emission rate and the live particle cap,
+ * below 3/4 the modifiers also skip particles, see {@link ParticleEngine#setModifierStride(int)}.
+ * The gap between the thresholds, the smoothing of the cost and the cooldown between two changes
+ * keep it from oscillating.
+ * <p/>
+ * A governor drives one engine at a time. It may be handed on to the engine of the next run, which then
+ * starts at the quality the previous run ended at, see {@link #restart()}.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class QualityGovernor {
+
+    //weight of the newest frame in the smoothed cost
+    private static final float SMOOTHING = 0.1f;
+    private static final float DECREASE_FACTOR = 0.75f;
+    private static final float INCREASE_STEP = 0.05f;
+
+    private float mFloor = 0.25f;
+    private float mCeiling = 1f;
+    private float mLowerThreshold = 0.15f;
+    private float mUpperThreshold = 0.3f;
+    private int mCooldownFrames = 30;
+
+    private float mQuality = 1f;
+    private float mSmoothedCost = -1;
+    private int mFramesSinceChange;
+
+    /**
+     * @param floor   lowest quality, above 0
+     * @param ceiling highest quality, at most 1; the governor starts there
+     */
+    public QualityGovernor setRange(float floor, float ceiling) {
+        if (floor <= 0 || floor > ceiling || ceiling > 1) {
+            throw new IllegalArgumentException("need 0 < floor <= ceiling <= 1, got " + floor + " and " + ceiling);
+        }
+        mFloor = floor;
+        mCeiling = ceiling;
+        mQuality = ceiling;
+        return this;
+    }
+
+    /**
+     * @param lower the quality rises while the particles cost less than this fraction of the frame budget
+     * @param upper the quality drops while they cost more
+     */
+    public QualityGovernor setThresholds(float lower, float upper) {
+        if (lower <= 0 || lower >= upper) {
+            throw new IllegalArgumentException("need 0 < lower < upper, got " + lower + " and " + upper);
+        }
+        mLowerThreshold = lower;
+        mUpperThreshold = upper;
+        return this;
+    }
+
+    /**
+     * @param frames frames to wait after a change before the next one
+     */
+    public QualityGovernor setCooldownFrames(int frames) {
+        mCooldownFrames = Math.max(0, frames);
+        return this;
+    }
+
+    public float getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * Feeds the cost of one frame.
+     *
+     * @param costNanos    time the particles took this frame, simulation and drawing
+     * @param budgetNanos  the vsync period
+     * @param missedVsyncs vsyncs missed since the previous frame
+     * @return true if the quality changed, it should then be applied with {@link #applyTo(ParticleEngine)}
+     */
+    public boolean onFrame(long costNanos, long budgetNanos, int missedVsyncs) {
+        float cost = (float) costNanos / budgetNanos;
+        mSmoothedCost = mSmoothedCost < 0 ? cost : mSmoothedCost + (cost - mSmoothedCost) * SMOOTHING;
+        if (++mFramesSinceChange < mCooldownFrames)
+            return false;
+        float quality = mQuality;
+        // Dropped frames only count against the particles if they are not negligible
+        if (mSmoothedCost > mUpperThreshold || (missedVsyncs > 0 && mSmoothedCost > mLowerThreshold)) {
+            quality = Math.max(mFloor, quality * DECREASE_FACTOR);
+        } else if (mSmoothedCost < mLowerThreshold) {
+            quality = Math.min(mCeiling, quality + INCREASE_STEP);
+        }
+        if (quality == mQuality)
+            return false;
+        mQuality = quality;
+        mFramesSinceChange = 0;
+        return true;
+    }
+
+    /**
+     * Start measuring afresh for a new run, keeping the quality reached so far: forgets the smoothed cost
+     * and restarts the cooldown. Apply the quality to the new engine with {@link #applyTo(ParticleEngine)}.
+     */
+    public void restart() {
+        mSmoothedCost = -1;
+        mFramesSinceChange = 0;
+    }
+
+    public void applyTo(ParticleEngine engine) {
+        final float quality = mQuality;
+        engine.setEmissionScale(quality);
+        engine.setLiveCap((int) Math.ceil(engine.getStore().mCapacity * quality));
+        engine.setModifierStride(quality >= 0.75f ? 1 : Math.round(1 / quality));
+    }
+}
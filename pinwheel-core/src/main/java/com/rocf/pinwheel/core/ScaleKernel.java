@@ -0,0 +1,87 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * Changes the scale of the particles along a {@link Curve} between a start and an end age,
+ * the particles are stopped after the end age.
+ * <p/>
+ * The random initial scale is seeded on spawn, the scale is then a function of the age only.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class ScaleKernel implements SeededModifier {
+
+    //channel of ParticleStore.random, apart from the other kernels
+    private static final int CHANNEL_INITIAL = 32;
+
+    protected final float mInitialValue;
+    protected final float mFinalValue;
+    protected final long mStartTime;
+    protected final long mEndTime;
+    protected final float mDuration;
+    protected Curve mCurve;
+
+    public ScaleKernel(float initialValue, float finalValue, long startMilis, long endMilis, Curve curve) {
+        mInitialValue = initialValue;
+        mFinalValue = finalValue;
+        mStartTime = startMilis;
+        mEndTime = endMilis;
+        mDuration = mEndTime - mStartTime;
+        mCurve = curve;
+    }
+
+    public ScaleKernel(float initialValue, float finalValue, long startMilis, long endMilis) {
+        this(initialValue, finalValue, startMilis, endMilis, Curve.SIN);
+    }
+
+    /**
+     * Sample the curve once into a table, see {@link BakedCurve}
+     *
+     * @param resolution number of samples
+     * @return this
+     */
+    public ScaleKernel bake(int resolution) {
+        mCurve = new BakedCurve(mCurve, resolution);
+        return this;
+    }
+
+    @Override
+    public void onSpawn(ParticleStore store, int[] slots, int from, int to) {
+        final float[] scaleInitialValue = store.mScaleInitialValue;
+        final int[] seeds = store.mSeed;
+        for (int i = from; i < to; i++) {
+            int slot = slots[i];
+            float temp = ParticleStore.random(seeds[slot], CHANNEL_INITIAL) / 1.5f;
+            if (temp < mInitialValue)
+                temp = mInitialValue;
+            if (temp > mFinalValue)
+                temp = mFinalValue;
+            scaleInitialValue[slot] = temp;
+            store.mScale[slot] = temp;
+        }
+    }
+
+    @Override
+    public void applyBatch(ParticleStore store, int[] slots, long[] ages, int from, int to) {
+        final float[] scale = store.mScale;
+        final float[] scaleInitialValue = store.mScaleInitialValue;
+        final float initialValue = mInitialValue;
+        final long startTime = mStartTime;
+        final long endTime = mEndTime;
+        final float duration = mDuration;
+        final Curve curve = mCurve;
+        for (int i = from; i < to; i++) {
+            int slot = slots[i];
+            long miliseconds = ages[i];
+            if (miliseconds == 0) {
+                scale[slot] = scaleInitialValue[slot];
+            } else if (miliseconds < startTime) {
+                scale[slot] = initialValue;
+            } else if (miliseconds > endTime) {
+                scale[slot] = 0;
+                store.mRunning[slot] = false;
+            } else {
+                scale[slot] = scaleInitialValue[slot] * curve.getInterpolation((miliseconds - startTime) / duration);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.rocf.pinwheel.core;
+
+/**
+ * A {@link BatchModifier} with per particle state, e.g. a random initial value. The state is seeded
+ * once when the particles are activated instead of on their first update, so {@link #applyBatch} is a pure
+ * function of the age and the seeded state: a particle can be evaluated at any age without having
+ * been updated at the ages before, see {@link ParticleEngine#seek(long)}.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public interface SeededModifier extends BatchModifier {
+
+    /**
+     * seeds the state of the particles of slots[from] to slots[to - 1], random values must derive
+     * from {@link ParticleStore#mSeed} through {@link ParticleStore#random(int, int)}
+     */
+    void onSpawn(ParticleStore store, int[] slots, int from, int to);
+}
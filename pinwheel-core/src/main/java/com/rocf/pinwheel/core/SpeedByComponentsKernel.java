@@ -0,0 +1,43 @@
+package com.rocf.pinwheel.core;
+
+import java.util.Random;
+
+/**
+ * Gives the particles a random speed, each component uniformly distributed in its own range.
+ * The speed derives from the seed of the particle, not from the {@link Random} of the batch.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class SpeedByComponentsKernel implements BatchInitializer {
+
+    //channels of ParticleStore.random, apart from the other kernels
+    private static final int CHANNEL_X = 48;
+    private static final int CHANNEL_Y = 49;
+
+    protected final float mMinSpeedX;
+    protected final float mMaxSpeedX;
+    protected final float mMinSpeedY;
+    protected final float mMaxSpeedY;
+
+    /**
+     * speeds are in pixels per milisecond
+     */
+    public SpeedByComponentsKernel(float speedMinX, float speedMaxX, float speedMinY, float speedMaxY) {
+        mMinSpeedX = speedMinX;
+        mMaxSpeedX = speedMaxX;
+        mMinSpeedY = speedMinY;
+        mMaxSpeedY = speedMaxY;
+    }
+
+    @Override
+    public void initBatch(ParticleStore store, int[] slots, int from, int to, Random r) {
+        final float rangeX = mMaxSpeedX - mMinSpeedX;
+        final float rangeY = mMaxSpeedY - mMinSpeedY;
+        final int[] seeds = store.mSeed;
+        for (int i = from; i < to; i++) {
+            int slot = slots[i];
+            store.mSpeedX[slot] = ParticleStore.random(seeds[slot], CHANNEL_X) * rangeX + mMinSpeedX;
+            store.mSpeedY[slot] = ParticleStore.random(seeds[slot], CHANNEL_Y) * rangeY + mMinSpeedY;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.rocf.pinwheel.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link BakedCurve} stays close to the curve it samples and clamps its input to [0, 1].
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class BakedCurveTest {
+
+    @Test
+    public void matchesTheSampledCurve() throws Exception {
+        BakedCurve baked = new BakedCurve(Curve.SIN, 128);
+        for (int i = 0; i <= 1000; i++) {
+            float input = i / 1000f;
+            assertEquals(Curve.SIN.getInterpolation(input), baked.getInterpolation(input), 1e-3f);
+        }
+    }
+
+    @Test
+    public void isExactOnALinearCurve() throws Exception {
+        BakedCurve baked = new BakedCurve(Curve.LINEAR, 2);
+        assertEquals(0.25f, baked.getInterpolation(0.25f), 1e-6f);
+        assertEquals(0.75f, baked.getInterpolation(0.75f), 1e-6f);
+    }
+
+    @Test
+    public void clampsTheInput() throws Exception {
+        BakedCurve baked = new BakedCurve(Curve.LINEAR, 16);
+        assertEquals(0, baked.getInterpolation(-1), 0);
+        assertEquals(0, baked.getInterpolation(Float.NEGATIVE_INFINITY), 0);
+        assertEquals(1, baked.getInterpolation(1), 0);
+        assertEquals(1, baked.getInterpolation(2), 0);
+        assertEquals(1, baked.getInterpolation(Float.POSITIVE_INFINITY), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsTwoSamples() throws Exception {
+        new BakedCurve(Curve.LINEAR, 1);
+    }
+}
@@ -0,0 +1,106 @@
+package com.rocf.pinwheel.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link EmissionController} must emit exactly rate * time over any run, whatever the update intervals,
+ * and land where the uninterrupted run is after a {@link EmissionController#seek(long, float)}.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class EmissionControllerTest {
+
+    private static long runTo(EmissionController emission, long from, long to, float scale) {
+        long emitted = 0;
+        // Uneven frames, as with a real vsync
+        long step = 16;
+        long t = from;
+        for (; t < to; t += step, step = step == 16 ? 17 : 16) {
+            emitted += emission.advance(t, scale);
+        }
+        return emitted + emission.advance(to, scale);
+    }
+
+    @Test
+    public void firstUpdateEmitsOneParticle() throws Exception {
+        EmissionController emission = new EmissionController(10);
+        emission.reset();
+        assertEquals(1, emission.advance(0, 1));
+        assertEquals(0, emission.advance(0, 1));
+    }
+
+    @Test
+    public void emitsExactlyTheRateOverAnHour() throws Exception {
+        EmissionController emission = new EmissionController(37.5f);
+        emission.reset();
+        long hour = 60 * 60 * 1000;
+        long emitted = runTo(emission, 0, hour, 1);
+        assertEquals(1 + 37.5 * hour / 1000, emitted, 1);
+    }
+
+    @Test
+    public void lowRatesKeepTheirFraction() throws Exception {
+        EmissionController emission = new EmissionController(0.5f);
+        emission.reset();
+        // Off the whole particle boundary, float rounding can't tip it
+        long emitted = runTo(emission, 0, 101000, 1);
+        assertEquals(1 + 50, emitted);
+    }
+
+    @Test
+    public void scaleMultipliesTheRate() throws Exception {
+        EmissionController full = new EmissionController(100);
+        EmissionController half = new EmissionController(100);
+        full.reset();
+        half.reset();
+        long fullEmitted = runTo(full, 0, 60000, 1);
+        long halfEmitted = runTo(half, 0, 60000, 0.5f);
+        assertEquals(fullEmitted / 2.0, halfEmitted, 2);
+    }
+
+    @Test
+    public void seekMatchesAnUninterruptedRun() throws Exception {
+        EmissionController stepped = new EmissionController(250);
+        stepped.reset();
+        long total = 0;
+        for (long t = 0; t <= 50000; t += 10) {
+            total += stepped.advance(t, 1);
+        }
+        EmissionController sought = new EmissionController(250);
+        assertEquals(total, sought.seek(50000, 1));
+        // Both carry on alike
+        assertEquals(stepped.advance(50123, 1), sought.advance(50123, 1));
+    }
+
+    @Test
+    public void seekBackwardsStartsOverFromThere() throws Exception {
+        EmissionController emission = new EmissionController(60);
+        long far = emission.seek(1000000, 1);
+        long near = emission.seek(1000, 1);
+        assertEquals(1 + 60000, far);
+        assertEquals(1 + 60, near);
+        // Past the update at 0, which emitted the first particle
+        assertEquals(1, emission.seek(0, 1));
+        assertEquals(0, emission.advance(0, 1));
+        assertEquals(0, emission.seek(-1, 1));
+        assertEquals(1, emission.advance(0, 1));
+    }
+
+    @Test
+    public void seekFollowsTheRateCurve() throws Exception {
+        EmissionController stepped = new EmissionController(1000);
+        stepped.setRateCurve(Curve.LINEAR, 4000);
+        stepped.reset();
+        long total = 0;
+        for (long t = 0; t <= 10000; t += 1) {
+            total += stepped.advance(t, 1);
+        }
+        EmissionController sought = new EmissionController(1000);
+        sought.setRateCurve(Curve.LINEAR, 4000);
+        // Half the rate over the ramp, then the full rate
+        assertEquals(1 + 2000 + 6000, sought.seek(10000, 1), 1);
+        assertEquals(total, sought.seek(10000, 1), 1);
+    }
+}
@@ -0,0 +1,74 @@
+package com.rocf.pinwheel.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Handoff of {@link FrameExchange}: the reader always gets the latest published frame and never a frame
+ * the writer still owns.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class FrameExchangeTest {
+
+    @Test
+    public void readerKeepsItsFrameUntilANewOneIsPublished() throws Exception {
+        FrameExchange exchange = new FrameExchange(1);
+        ParticleFrame empty = exchange.acquire();
+        assertEquals(0, empty.mCount);
+        assertSame(empty, exchange.acquire());
+
+        exchange.back().mCount = 1;
+        exchange.publish();
+        ParticleFrame first = exchange.acquire();
+        assertEquals(1, first.mCount);
+        assertSame(first, exchange.acquire());
+        assertNotSame(first, exchange.back());
+    }
+
+    @Test
+    public void readerSkipsToTheLatestFrame() throws Exception {
+        FrameExchange exchange = new FrameExchange(1);
+        for (int i = 1; i <= 3; i++) {
+            exchange.back().mCount = i;
+            exchange.publish();
+        }
+        assertEquals(3, exchange.acquire().mCount);
+        assertNotSame(exchange.acquire(), exchange.back());
+    }
+
+    @Test
+    public void concurrentReaderOnlySeesCompleteFramesInOrder() throws Exception {
+        final FrameExchange exchange = new FrameExchange(1);
+        final int frames = 200000;
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= frames; i++) {
+                    ParticleFrame frame = exchange.back();
+                    // Both fields of a published frame always agree
+                    frame.mCount = i;
+                    frame.mX[0] = i;
+                    exchange.publish();
+                }
+            }
+        });
+        writer.start();
+        int last = 0;
+        while (last < frames && failure.get() == null) {
+            ParticleFrame frame = exchange.acquire();
+            if (frame.mCount < last)
+                failure.set("frame " + frame.mCount + " after " + last);
+            else if (frame.mCount != (int) frame.mX[0])
+                failure.set("frame " + frame.mCount + " written while read");
+            last = frame.mCount;
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertEquals(frames, exchange.acquire().mCount);
+    }
+}
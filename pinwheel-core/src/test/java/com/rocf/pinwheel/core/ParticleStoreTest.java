@@ -0,0 +1,105 @@
+package com.rocf.pinwheel.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pool bookkeeping of {@link ParticleStore}: the free list, the dense live slots and the retiring passes.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class ParticleStoreTest {
+
+    @Test
+    public void obtainHandsOutSlotsFromZeroUntilExhausted() throws Exception {
+        ParticleStore store = new ParticleStore(3);
+        assertEquals(0, store.obtain());
+        assertEquals(1, store.obtain());
+        assertEquals(2, store.obtain());
+        assertFalse(store.hasFreeSlot());
+        assertEquals(-1, store.obtain());
+        assertEquals(3, store.mActiveCount);
+    }
+
+    @Test
+    public void retireMovesTheLastLiveSlotIntoItsPlace() throws Exception {
+        ParticleStore store = new ParticleStore(4);
+        for (int i = 0; i < 4; i++) {
+            store.mRunning[store.obtain()] = true;
+        }
+        store.retire(1);
+        assertEquals(3, store.mActiveCount);
+        assertEquals(0, store.mActiveSlots[0]);
+        assertEquals(3, store.mActiveSlots[1]);
+        assertEquals(2, store.mActiveSlots[2]);
+        assertFalse(store.mRunning[1]);
+        // The retired slot is the next one handed out
+        assertTrue(store.hasFreeSlot());
+        assertEquals(1, store.obtain());
+    }
+
+    @Test
+    public void retireAllFreesEverySlot() throws Exception {
+        ParticleStore store = new ParticleStore(5);
+        for (int i = 0; i < 5; i++) {
+            store.mRunning[store.obtain()] = true;
+        }
+        store.retireAll();
+        assertEquals(0, store.mActiveCount);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(store.mRunning[i]);
+            assertTrue(store.obtain() >= 0);
+        }
+    }
+
+    @Test
+    public void integrateAllRetiresExpiredAndStoppedAndKeepsTheRestDense() throws Exception {
+        ParticleStore store = new ParticleStore(4);
+        for (int i = 0; i < 4; i++) {
+            int slot = store.obtain();
+            store.mRunning[slot] = true;
+            store.mTimeToLive[slot] = 100;
+            store.mStartingMilisecond[slot] = i * 50;
+            store.mInitialX[slot] = 10;
+            store.mSpeedX[slot] = 1;
+        }
+        store.mRunning[3] = false;
+        // Slot 0 is 150 old and expired, slot 3 was stopped
+        store.integrateAll(150);
+        assertEquals(2, store.mActiveCount);
+        for (int i = 0; i < store.mActiveCount; i++) {
+            int slot = store.mActiveSlots[i];
+            assertTrue(slot == 1 || slot == 2);
+            assertEquals(150 - slot * 50, store.mAges[i]);
+            assertEquals(10 + store.mAges[i], store.mX[slot], 0);
+        }
+    }
+
+    @Test
+    public void retireStoppedKeepsTheRunningParticles() throws Exception {
+        ParticleStore store = new ParticleStore(6);
+        for (int i = 0; i < 6; i++) {
+            int slot = store.obtain();
+            store.mRunning[slot] = slot % 2 == 0;
+        }
+        store.retireStopped();
+        assertEquals(3, store.mActiveCount);
+        for (int i = 0; i < store.mActiveCount; i++) {
+            assertTrue(store.mRunning[store.mActiveSlots[i]]);
+        }
+    }
+
+    @Test
+    public void randomIsUniformAndOnlyDependsOnSeedAndChannel() throws Exception {
+        float sum = 0;
+        for (int seed = 0; seed < 10000; seed++) {
+            float value = ParticleStore.random(seed, 0);
+            assertTrue(value >= 0 && value < 1);
+            assertEquals(value, ParticleStore.random(seed, 0), 0);
+            sum += value;
+        }
+        assertEquals(0.5f, sum / 10000, 0.02f);
+        assertTrue(ParticleStore.random(42, 0) != ParticleStore.random(42, 1));
+    }
+}
@@ -0,0 +1,56 @@
+package com.rocf.pinwheel.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link QualityGovernor} steps and what it applies to an engine, including an engine of a later run.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class QualityGovernorTest {
+
+    private static final long BUDGET = 16000000L;
+
+    @Test
+    public void appliesTheCeilingWithoutAnyChange() throws Exception {
+        QualityGovernor governor = new QualityGovernor().setRange(0.25f, 0.5f);
+        ParticleEngine engine = new ParticleEngine(1000, 1000, new Random(0));
+        governor.applyTo(engine);
+        assertEquals(0.5f, engine.getEmissionScale(), 0);
+        assertEquals(500, engine.getLiveCap());
+        assertEquals(2, engine.getModifierStride());
+    }
+
+    @Test
+    public void dropsUnderLoadAfterTheCooldown() throws Exception {
+        QualityGovernor governor = new QualityGovernor().setCooldownFrames(3);
+        assertFalse(governor.onFrame(BUDGET, BUDGET, 0));
+        assertFalse(governor.onFrame(BUDGET, BUDGET, 0));
+        assertTrue(governor.onFrame(BUDGET, BUDGET, 0));
+        assertEquals(0.75f, governor.getQuality(), 1e-6f);
+    }
+
+    @Test
+    public void restartKeepsTheQualityAndWaitsOutTheCooldown() throws Exception {
+        QualityGovernor governor = new QualityGovernor().setCooldownFrames(2);
+        for (int i = 0; i < 20; i++) {
+            governor.onFrame(BUDGET, BUDGET, 0);
+        }
+        float quality = governor.getQuality();
+        assertEquals(0.25f, quality, 1e-6f);
+
+        governor.restart();
+        ParticleEngine engine = new ParticleEngine(100, 1000, new Random(0));
+        governor.applyTo(engine);
+        assertEquals(quality, engine.getEmissionScale(), 0);
+        assertEquals(25, engine.getLiveCap());
+        // A cheap first frame of the new run doesn't inherit the old smoothed cost
+        assertFalse(governor.onFrame(0, BUDGET, 0));
+        assertTrue(governor.onFrame(0, BUDGET, 0));
+        assertEquals(quality + 0.05f, governor.getQuality(), 1e-6f);
+    }
+}
@@ -0,0 +1,203 @@
+package com.rocf.pinwheel.core;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * The ring buffer mode of {@link ParticleStore} and {@link ParticleEngine}: the same particles as the free
+ * list, kept in start order across the wrap of the head, and both overflow policies at a full ring.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class RingBufferTest {
+
+    private static final long FRAME_MILIS = 16;
+
+    private static ParticleEngine newEngine(int capacity, float particlesPerSecond, boolean ringBuffer, int overflowPolicy) {
+        ParticleEngine engine = newBareEngine(capacity, particlesPerSecond, ringBuffer, overflowPolicy);
+        engine.addModifier(new AlphaKernel(-250, 250, 0, 2000));
+        engine.addModifier(new ScaleKernel(0.3f, 0.5f, 0, 400));
+        return engine;
+    }
+
+    /**
+     * Without modifiers every particle lives its full time to live, so the ring fills up.
+     */
+    private static ParticleEngine newBareEngine(int capacity, float particlesPerSecond, boolean ringBuffer, int overflowPolicy) {
+        ParticleEngine engine = new ParticleEngine(capacity, 2000, new Random(0));
+        engine.setRingBuffer(ringBuffer);
+        engine.setOverflowPolicy(overflowPolicy);
+        engine.setEmiter(0, 100, 0, 100);
+        engine.addInitializer(new SpeedByComponentsKernel(-0.1f, 0.1f, -0.1f, 0.1f));
+        engine.startEmiting(particlesPerSecond);
+        return engine;
+    }
+
+    private static Map<Integer, String> particles(ParticleEngine engine) {
+        ParticleStore store = engine.getStore();
+        Map<Integer, String> particles = new TreeMap<Integer, String>();
+        for (int i = store.mFirstActive; i < store.mFirstActive + store.mActiveCount; i++) {
+            int slot = store.mActiveSlots[i];
+            if (store.mRunning[slot])
+                particles.put(store.mSeed[slot], store.mStartingMilisecond[slot] + " " + store.mX[slot] + " "
+                        + store.mY[slot] + " " + store.mAlpha[slot] + " " + store.mScale[slot]);
+        }
+        return particles;
+    }
+
+    /**
+     * The live range holds distinct slots in the order the particles started.
+     */
+    private static void assertStartOrder(ParticleStore store) {
+        boolean[] seen = new boolean[store.mCapacity];
+        long previous = Long.MIN_VALUE;
+        assertTrue(store.mFirstActive >= 0 && store.mFirstActive < Math.max(1, store.mCapacity));
+        assertTrue(store.mActiveCount <= store.mCapacity);
+        for (int i = store.mFirstActive; i < store.mFirstActive + store.mActiveCount; i++) {
+            int slot = store.mActiveSlots[i];
+            assertFalse("slot " + slot + " twice", seen[slot]);
+            seen[slot] = true;
+            assertTrue(store.mStartingMilisecond[slot] >= previous);
+            previous = store.mStartingMilisecond[slot];
+        }
+    }
+
+    @Test
+    public void ringBufferGivesTheParticlesOfTheFreeList() throws Exception {
+        ParticleEngine pool = newEngine(1000, 300, false, ParticleEngine.OVERFLOW_DROP_NEWEST);
+        ParticleEngine ring = newEngine(1000, 300, true, ParticleEngine.OVERFLOW_DROP_NEWEST);
+        for (long t = 0; t <= 20000; t += FRAME_MILIS) {
+            pool.update(t);
+            ring.update(t);
+            assertEquals("at " + t, particles(pool), particles(ring));
+        }
+        assertTrue(particles(ring).size() > 100);
+    }
+
+    @Test
+    public void startOrderSurvivesBurstsAndTheWrapOfTheHead() throws Exception {
+        // Small ring, the head goes round it many times
+        ParticleEngine engine = newEngine(64, 20, true, ParticleEngine.OVERFLOW_DROP_NEWEST);
+        ParticleStore store = engine.getStore();
+        int wraps = 0;
+        int lastFirst = 0;
+        for (long t = 0; t <= 30000; t += FRAME_MILIS) {
+            if (t % 400 == 0)
+                engine.burst(7, t);
+            engine.update(t);
+            assertStartOrder(store);
+            if (store.mFirstActive < lastFirst)
+                wraps++;
+            lastFirst = store.mFirstActive;
+        }
+        assertTrue("wrapped " + wraps + " times", wraps > 10);
+    }
+
+    @Test
+    public void dropNewestKeepsTheOldestAtAFullRing() throws Exception {
+        // Twice as many particles due as the ring holds
+        ParticleEngine engine = newBareEngine(100, 100, true, ParticleEngine.OVERFLOW_DROP_NEWEST);
+        ParticleStore store = engine.getStore();
+        for (long t = 0; t <= 1200; t += FRAME_MILIS) {
+            engine.update(t);
+        }
+        assertEquals(100, store.mActiveCount);
+        assertTrue(engine.getSpawnsRefused() > 0);
+        // The first particles are still there
+        assertEquals(0, store.mStartingMilisecond[store.mActiveSlots[store.mFirstActive]]);
+        assertStartOrder(store);
+    }
+
+    @Test
+    public void recycleOldestKeepsTheNewestAtAFullRing() throws Exception {
+        ParticleEngine engine = newBareEngine(100, 100, true, ParticleEngine.OVERFLOW_RECYCLE_OLDEST);
+        ParticleStore store = engine.getStore();
+        long t = 0;
+        for (; t <= 1200; t += FRAME_MILIS) {
+            engine.update(t);
+        }
+        t -= FRAME_MILIS;
+        assertEquals(100, store.mActiveCount);
+        assertEquals(0, engine.getSpawnsRefused());
+        // The youngest particle is from the last update, the oldest one about a second old
+        int youngest = store.mActiveSlots[store.mFirstActive + store.mActiveCount - 1];
+        assertEquals(t, store.mStartingMilisecond[youngest]);
+        long oldestAge = t - store.mStartingMilisecond[store.mActiveSlots[store.mFirstActive]];
+        assertTrue("oldest is " + oldestAge, oldestAge < 1100);
+        assertStartOrder(store);
+    }
+
+    @Test
+    public void recycleOldestMakesRoomForABurst() throws Exception {
+        ParticleEngine engine = newBareEngine(50, 0, true, ParticleEngine.OVERFLOW_RECYCLE_OLDEST);
+        ParticleStore store = engine.getStore();
+        engine.burst(50, 0);
+        engine.update(0);
+        engine.burst(20, 0);
+        engine.update(16);
+        assertEquals(50, store.mActiveCount);
+        assertEquals(0, engine.getSpawnsRefused());
+        int newer = 0;
+        for (int i = store.mFirstActive; i < store.mFirstActive + store.mActiveCount; i++) {
+            if (store.mStartingMilisecond[store.mActiveSlots[i]] == 16)
+                newer++;
+        }
+        assertEquals(20, newer);
+        assertStartOrder(store);
+    }
+
+    @Test
+    public void ringObtainsAndRetiresInACircle() throws Exception {
+        ParticleStore store = new ParticleStore(3);
+        store.setRingBuffer(true);
+        assertEquals(0, store.obtain());
+        assertEquals(1, store.obtain());
+        assertEquals(2, store.obtain());
+        assertEquals(-1, store.obtain());
+        store.retireOldest(2);
+        assertEquals(2, store.mFirstActive);
+        assertEquals(0, store.obtain());
+        assertEquals(1, store.obtain());
+        // The live range runs past the end of the slots without wrapping in the array
+        assertEquals(3, store.mActiveCount);
+        assertEquals(2, store.mActiveSlots[2]);
+        assertEquals(0, store.mActiveSlots[3]);
+        assertEquals(1, store.mActiveSlots[4]);
+        store.retire(2);
+        assertEquals(0, store.mFirstActive);
+        store.retireAll();
+        assertEquals(0, store.mActiveCount);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ringOnlyRetiresTheOldest() throws Exception {
+        ParticleStore store = new ParticleStore(3);
+        store.setRingBuffer(true);
+        store.obtain();
+        store.obtain();
+        store.retire(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void modeCantChangeWithLiveParticles() throws Exception {
+        ParticleStore store = new ParticleStore(3);
+        store.obtain();
+        store.setRingBuffer(true);
+    }
+
+    @Test
+    public void emptyRingRetiresNothing() throws Exception {
+        ParticleStore store = new ParticleStore(0);
+        store.setRingBuffer(true);
+        assertEquals(-1, store.obtain());
+        store.retireAll();
+        store.integrateAll(100);
+        store.retireStopped();
+        assertEquals(0, store.mActiveCount);
+    }
+}
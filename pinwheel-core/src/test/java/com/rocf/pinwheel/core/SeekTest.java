@@ -0,0 +1,130 @@
+package com.rocf.pinwheel.core;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ParticleEngine#seek(long)} must leave the same live particles as an uninterrupted run, in both
+ * pool modes and whichever direction it jumps.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class SeekTest {
+
+    private static final int TIME_TO_LIVE = 2000;
+    private static final long FRAME_MILIS = ParticleEngine.SEEK_STEP_MILIS;
+
+    private static ParticleEngine newEngine(boolean ringBuffer) {
+        ParticleEngine engine = new ParticleEngine(1000, TIME_TO_LIVE, new Random(0));
+        engine.setRingBuffer(ringBuffer);
+        engine.setEmiter(0, 100, 0, 100);
+        engine.addInitializer(new SpeedByComponentsKernel(-0.1f, 0.1f, -0.1f, 0.1f));
+        engine.addModifier(new AlphaKernel(-250, 250, 0, 2000));
+        engine.addModifier(new ScaleKernel(0.3f, 0.5f, 0, 1500));
+        engine.startEmiting(200);
+        return engine;
+    }
+
+    /**
+     * Updates every frame from 0 and a last time at the given one, as vsync would.
+     */
+    private static ParticleEngine run(boolean ringBuffer, long miliseconds, long frameMilis) {
+        ParticleEngine engine = newEngine(ringBuffer);
+        for (long t = 0; t < miliseconds; t += frameMilis) {
+            engine.update(t);
+        }
+        engine.update(miliseconds);
+        return engine;
+    }
+
+    /**
+     * @return the running particles by seed, as drawn along with their start time
+     */
+    private static Map<Integer, String> particles(ParticleEngine engine) {
+        ParticleStore store = engine.getStore();
+        Map<Integer, String> particles = new TreeMap<Integer, String>();
+        for (int i = store.mFirstActive; i < store.mFirstActive + store.mActiveCount; i++) {
+            int slot = store.mActiveSlots[i];
+            if (store.mRunning[slot])
+                particles.put(store.mSeed[slot], store.mStartingMilisecond[slot] + " " + store.mX[slot] + " "
+                        + store.mY[slot] + " " + store.mAlpha[slot] + " " + store.mScale[slot]);
+        }
+        return particles;
+    }
+
+    private static void assertSeekMatchesRun(boolean ringBuffer, long miliseconds) {
+        Map<Integer, String> expected = particles(run(ringBuffer, miliseconds, FRAME_MILIS));
+        ParticleEngine engine = newEngine(ringBuffer);
+        engine.seek(miliseconds);
+        assertTrue(expected.size() > 100);
+        assertEquals("at " + miliseconds, expected, particles(engine));
+    }
+
+    @Test
+    public void seekOnTheFrameGridMatchesTheRun() throws Exception {
+        assertSeekMatchesRun(false, 600 * FRAME_MILIS);
+        assertSeekMatchesRun(true, 600 * FRAME_MILIS);
+    }
+
+    @Test
+    public void seekBetweenFramesMatchesTheRun() throws Exception {
+        assertSeekMatchesRun(false, 600 * FRAME_MILIS + 7);
+        assertSeekMatchesRun(true, 600 * FRAME_MILIS + 7);
+    }
+
+    @Test
+    public void seekWithinTheFirstTimeToLiveMatchesTheRun() throws Exception {
+        assertSeekMatchesRun(false, TIME_TO_LIVE - 11);
+        assertSeekMatchesRun(true, TIME_TO_LIVE - 11);
+    }
+
+    @Test
+    public void seekBackAndForthGivesTheSameParticles() throws Exception {
+        for (boolean ringBuffer : new boolean[]{false, true}) {
+            ParticleEngine engine = newEngine(ringBuffer);
+            engine.seek(10007);
+            Map<Integer, String> expected = particles(engine);
+            engine.seek(3600000);
+            engine.seek(500);
+            engine.seek(10007);
+            assertEquals(expected, particles(engine));
+        }
+    }
+
+    @Test
+    public void seekStartsParticlesAtMostOneStepLaterThanAFinerRun() throws Exception {
+        long miliseconds = 10000;
+        ParticleEngine fine = run(false, miliseconds, 1);
+        ParticleEngine sought = newEngine(false);
+        sought.seek(miliseconds);
+        Map<Integer, Long> fineStarts = starts(fine);
+        Map<Integer, Long> soughtStarts = starts(sought);
+        int common = 0;
+        for (Map.Entry<Integer, Long> entry : soughtStarts.entrySet()) {
+            Long start = fineStarts.get(entry.getKey());
+            if (start == null)
+                continue;
+            common++;
+            long late = entry.getValue() - start;
+            assertTrue("started " + late + "ms late", late >= 0 && late < ParticleEngine.SEEK_STEP_MILIS);
+        }
+        // Only the particles right at the end of their life may differ
+        assertTrue(common >= fineStarts.size() - 4);
+    }
+
+    private static Map<Integer, Long> starts(ParticleEngine engine) {
+        ParticleStore store = engine.getStore();
+        Map<Integer, Long> starts = new TreeMap<Integer, Long>();
+        for (int i = store.mFirstActive; i < store.mFirstActive + store.mActiveCount; i++) {
+            int slot = store.mActiveSlots[i];
+            if (store.mRunning[slot])
+                starts.put(store.mSeed[slot], store.mStartingMilisecond[slot]);
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,84 @@
+package com.rocf.pinwheel;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Process-wide {@link FrameClock} shared by every {@link PinWheelWidget} and {@link ParticleSystem}.
+ * <p/>
+ * However many instances are animating, the ticker keeps a single callback on the underlying clock and
+ * dispatches each frame to the callbacks posted for it. Callbacks are one-shot, so an instance that
+ * stops re-posting is unregistered on its own and the ticker goes quiet once nobody is animating.
+ * It must only be used from the main thread.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class AnimationTicker implements FrameClock, Choreographer.FrameCallback {
+
+    private static AnimationTicker sInstance;
+
+    private final FrameClock mClock;
+    private boolean mScheduled;
+    //callbacks posted for the next frame and the ones of the frame being dispatched
+    private ArrayList<Choreographer.FrameCallback> mPending = new ArrayList<Choreographer.FrameCallback>();
+    private ArrayList<Choreographer.FrameCallback> mDispatching = new ArrayList<Choreographer.FrameCallback>();
+
+    public static AnimationTicker getInstance() {
+        if (sInstance == null) {
+            sInstance = new AnimationTicker(new ChoreographerFrameClock());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param clock the clock the ticker itself runs on, e.g. a hand driven clock in tests
+     */
+    public AnimationTicker(FrameClock clock) {
+        mClock = clock;
+    }
+
+    @Override
+    public void postFrameCallback(Choreographer.FrameCallback callback) {
+        if (!mPending.contains(callback)) {
+            mPending.add(callback);
+        }
+        if (!mScheduled) {
+            mScheduled = true;
+            mClock.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void removeFrameCallback(Choreographer.FrameCallback callback) {
+        mPending.remove(callback);
+        // Also skip it if the current frame didn't reach it yet
+        int index = mDispatching.indexOf(callback);
+        if (index >= 0) {
+            mDispatching.set(index, null);
+        }
+    }
+
+    /**
+     * @return number of callbacks waiting for the next frame
+     */
+    public int getCallbackCount() {
+        return mPending.size();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        // Callbacks re-posting themselves go to the other list, for the next frame
+        ArrayList<Choreographer.FrameCallback> dispatching = mPending;
+        mPending = mDispatching;
+        mDispatching = dispatching;
+        for (int i = 0; i < dispatching.size(); i++) {
+            Choreographer.FrameCallback callback = dispatching.get(i);
+            if (callback != null) {
+                callback.doFrame(frameTimeNanos);
+            }
+        }
+        dispatching.clear();
+    }
+}
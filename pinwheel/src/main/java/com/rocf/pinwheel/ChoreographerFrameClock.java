@@ -0,0 +1,28 @@
+package com.rocf.pinwheel;
+
+import android.view.Choreographer;
+
+/**
+ * {@link FrameClock} ticking on vsync through the {@link Choreographer} of the creating thread.
+ * It must be created on a thread with a Looper, usually the main thread.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public class ChoreographerFrameClock implements FrameClock {
+
+    private final Choreographer mChoreographer;
+
+    public ChoreographerFrameClock() {
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    @Override
+    public void postFrameCallback(Choreographer.FrameCallback callback) {
+        mChoreographer.postFrameCallback(callback);
+    }
+
+    @Override
+    public void removeFrameCallback(Choreographer.FrameCallback callback) {
+        mChoreographer.removeFrameCallback(callback);
+    }
+}
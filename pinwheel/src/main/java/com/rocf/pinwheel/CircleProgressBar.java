@@ -5,7 +5,9 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Picture;
 import android.graphics.RectF;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.widget.LinearLayout;
 
@@ -19,6 +21,9 @@ import android.widget.LinearLayout;
  * #The Center of Circle:
  * The center of circle area can be use to draw custom view via extends it
  * and implements it's Method{@link #drawCustomView(Canvas, float, float, float)}<br/>
+ * <p/>
+ * The background circle and the track arc are recorded once into a {@link Picture} and replayed on
+ * every draw, they are only recorded again when the size, stroke, cap, colors or degrees change.
  *
  * @author rocf.wong@gmail.com create by 2016/08/10
  */
@@ -48,6 +53,9 @@ public class CircleProgressBar extends LinearLayout {
     private boolean mIndeterminate;
     public Context context = null;
 
+    //background circle and track arc, null until recorded or after they changed
+    private Picture mStaticLayer;
+
     public CircleProgressBar(Context context) {
         this(context, null);
     }
@@ -132,11 +140,39 @@ public class CircleProgressBar extends LinearLayout {
     @Override
     protected synchronized void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        drawBackground(canvas);
+        drawStaticLayer(canvas);
         drawProgress(canvas);
         drawCustomView(canvas, mCenterX, mCenterY, mTotalDegree);
     }
 
+    /**
+     * Replays the recorded background and track, hardware canvases only support pictures since API 23
+     */
+    private void drawStaticLayer(Canvas canvas) {
+        if (canvas.isHardwareAccelerated() && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            drawBackground(canvas);
+            drawTrack(canvas);
+            return;
+        }
+        if (mStaticLayer == null) {
+            Picture picture = new Picture();
+            Canvas recording = picture.beginRecording(getWidth(), getHeight());
+            drawBackground(recording);
+            drawTrack(recording);
+            picture.endRecording();
+            mStaticLayer = picture;
+        }
+        canvas.drawPicture(mStaticLayer);
+    }
+
+    /**
+     * Drop the recorded background and track, they are recorded again by the next draw
+     */
+    private void invalidateStaticLayer() {
+        mStaticLayer = null;
+        invalidate();
+    }
+
     private void drawBackground(Canvas canvas) {
 
         if (mBackgroundColor != Color.TRANSPARENT) {
@@ -145,9 +181,13 @@ public class CircleProgressBar extends LinearLayout {
 
     }
 
-    private void drawProgress(Canvas canvas) {
+    private void drawTrack(Canvas canvas) {
 
         canvas.drawArc(mProgressRectF, mStartDegree, mTotalDegree, false, mProgressBackgroundPaint);
+    }
+
+    private void drawProgress(Canvas canvas) {
+
         if (getProgress() != 0)
             canvas.drawArc(mProgressRectF, mStartDegree, mTotalDegree * getProgress() / getMax(), false, mProgressPaint);
 
@@ -169,6 +209,7 @@ public class CircleProgressBar extends LinearLayout {
         mProgressRectF.right = mCenterX + mRadius;
         //Prevent the progress from clipping
         mProgressRectF.inset(mProgressStrokeWidth / 2, mProgressStrokeWidth / 2);
+        mStaticLayer = null;
     }
 
     public int getBackgroundColor() {
@@ -179,13 +220,13 @@ public class CircleProgressBar extends LinearLayout {
     public void setBackgroundColor(int backgroundColor) {
         this.mBackgroundColor = backgroundColor;
         mBackgroundPaint.setColor(backgroundColor);
-        invalidate();
+        invalidateStaticLayer();
     }
 
     public void setProgressStrokeWidth(float progressStrokeWidth) {
         this.mProgressStrokeWidth = progressStrokeWidth;
         mProgressRectF.inset(mProgressStrokeWidth / 2, mProgressStrokeWidth / 2);
-        invalidate();
+        invalidateStaticLayer();
     }
 
     public float getProgressStrokeWidth() {
@@ -201,7 +242,7 @@ public class CircleProgressBar extends LinearLayout {
     public void setProgressBackgroundColor(int progressBackgroundColor) {
         this.mProgressBackgroundColor = progressBackgroundColor;
         mProgressBackgroundPaint.setColor(mProgressBackgroundColor);
-        invalidate();
+        invalidateStaticLayer();
     }
 
     public int getProgressBackgroundColor() {
@@ -211,11 +252,13 @@ public class CircleProgressBar extends LinearLayout {
 
     public CircleProgressBar setStartDegree(int startDegree) {
         this.mStartDegree = startDegree;
+        invalidateStaticLayer();
         return this;
     }
 
     public CircleProgressBar setTotalDegree(int totalDegree) {
         this.mTotalDegree = totalDegree;
+        invalidateStaticLayer();
         return this;
     }
 
@@ -228,7 +271,7 @@ public class CircleProgressBar extends LinearLayout {
         mCap = cap;
         mProgressPaint.setStrokeCap(cap);
         mProgressBackgroundPaint.setStrokeCap(cap);
-        invalidate();
+        invalidateStaticLayer();
     }
 
 
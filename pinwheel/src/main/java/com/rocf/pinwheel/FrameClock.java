@@ -0,0 +1,22 @@
+package com.rocf.pinwheel;
+
+import android.view.Choreographer;
+
+/**
+ * Source of frame ticks for {@link ParticleSystem} and {@link PinWheelWidget}.
+ * <p/>
+ * Callbacks are one-shot, like {@link Choreographer}: a callback that wants the next frame too
+ * must post itself again. By default everything ticks from the shared {@link AnimationTicker},
+ * which runs on a {@link ChoreographerFrameClock}; tests can inject a clock that delivers frames by hand.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public interface FrameClock {
+
+    /**
+     * Runs the callback once on the next frame with the frame time in {@link System#nanoTime()} base.
+     */
+    void postFrameCallback(Choreographer.FrameCallback callback);
+
+    void removeFrameCallback(Choreographer.FrameCallback callback);
+}
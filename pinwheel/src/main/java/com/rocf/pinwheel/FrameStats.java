@@ -0,0 +1,113 @@
+package com.rocf.pinwheel;
+
+/**
+ * What one simulated frame of a {@link ParticleSystem} cost, reported to a {@link Listener} set with
+ * {@link ParticleSystem#setFrameStatsListener(Listener)}.
+ * <p/>
+ * The same instance is filled again for every frame, listeners must copy the values they keep.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class FrameStats {
+
+    /**
+     * Called on the simulation thread after every frame, it must return quickly.
+     */
+    public interface Listener {
+
+        void onFrameStats(FrameStats stats);
+    }
+
+    long mFrameTimeNanos;
+    long mFrameBudgetNanos;
+    long mSimulationNanos;
+    long mDrawNanos;
+    int mLiveParticles;
+    int mCulledParticles;
+    int mSpawnsRefused;
+    int mEmissionDeficit;
+    int mMissedVsyncs;
+    RollingHistogram mSimulationHistogram;
+    RollingHistogram mDrawHistogram;
+
+    /**
+     * @return vsync time of the frame, in the {@link System#nanoTime()} time base
+     */
+    public long getFrameTimeNanos() {
+        return mFrameTimeNanos;
+    }
+
+    /**
+     * @return the vsync period of the display the particles are on
+     */
+    public long getFrameBudgetNanos() {
+        return mFrameBudgetNanos;
+    }
+
+    /**
+     * @return time spent emitting, integrating, modifying and publishing this frame
+     */
+    public long getSimulationNanos() {
+        return mSimulationNanos;
+    }
+
+    /**
+     * @return time the last draw of the particles took on the UI thread
+     */
+    public long getDrawNanos() {
+        return mDrawNanos;
+    }
+
+    public int getLiveParticles() {
+        return mLiveParticles;
+    }
+
+    /**
+     * @return live particles left out of the drawn frame because they were invisible
+     */
+    public int getCulledParticles() {
+        return mCulledParticles;
+    }
+
+    /**
+     * @return particles that were due this frame but found the pool exhausted
+     */
+    public int getSpawnsRefused() {
+        return mSpawnsRefused;
+    }
+
+    /**
+     * @return how many particles due in the last update were not emitted, because of the pool or the live cap
+     */
+    public int getEmissionDeficit() {
+        return mEmissionDeficit;
+    }
+
+    /**
+     * @return vsyncs that passed without a frame since the previous one
+     */
+    public int getMissedVsyncs() {
+        return mMissedVsyncs;
+    }
+
+    /**
+     * @return true if simulating and drawing the frame took longer than the vsync period
+     */
+    public boolean isOverrun() {
+        return mSimulationNanos + mDrawNanos > mFrameBudgetNanos;
+    }
+
+    /**
+     * @return simulation times of the recent frames
+     */
+    public RollingHistogram getSimulationHistogram() {
+        return mSimulationHistogram;
+    }
+
+    /**
+     * @return draw times of the recent frames
+     */
+    public RollingHistogram getDrawHistogram() {
+        return mDrawHistogram;
+    }
+}
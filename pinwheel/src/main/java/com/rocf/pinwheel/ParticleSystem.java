@@ -5,19 +5,40 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Message;
+import android.os.Process;
+import android.os.Trace;
 import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.Display;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.animation.Interpolator;
 import android.view.animation.LinearInterpolator;
 
-import java.util.ArrayList;
+import com.rocf.pinwheel.core.AlphaKernel;
+import com.rocf.pinwheel.core.BakedCurve;
+import com.rocf.pinwheel.core.BatchInitializer;
+import com.rocf.pinwheel.core.BatchModifier;
+import com.rocf.pinwheel.core.Curve;
+import com.rocf.pinwheel.core.FrameExchange;
+import com.rocf.pinwheel.core.ParticleCuller;
+import com.rocf.pinwheel.core.ParticleEngine;
+import com.rocf.pinwheel.core.ParticleFrame;
+import com.rocf.pinwheel.core.ParticleStore;
+import com.rocf.pinwheel.core.QualityGovernor;
+import com.rocf.pinwheel.core.ScaleKernel;
+import com.rocf.pinwheel.core.SpeedByComponentsKernel;
+
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Particle Emit System.
@@ -33,60 +54,127 @@ import java.util.Random;
  * particleSystem.emit();
  * </pre>
  *
+ * The simulation publishes every frame as a snapshot through a lock-free {@link FrameExchange}, the
+ * drawing view only ever reads the last published snapshot, so simulation and drawing never wait on
+ * each other. Call {@link #setSimulationOnWorkerThread(boolean)} to move the simulation off the UI thread.
+ * <p/>
+ * The simulation itself is the Android free {@link ParticleEngine} of the pinwheel-core module, this class
+ * drives it from vsync and draws it.
+ *
  * @author rocf.wong@gmail.com create by 2016/08/10
  */
-public class ParticleSystem implements Handler.Callback {
+public class ParticleSystem implements Handler.Callback, Choreographer.FrameCallback {
     private static final String TAG = "ParticleSystem";
-    private static final int MESSAGE_LOOP_EMIT = 0;
     private static final int MESSAGE_CANCLE = 1;
-    private static final int MESSAGE_ONE_SHOT = 2;
-    private static final long TIMMERTASK_INTERVAL = 10;
+    private static final long NANOS_PER_MILISECOND = 1000000L;
+    //a slow frame runs at most this many fixed steps, the rest of the backlog is dropped
+    private static final int MAX_FIXED_STEPS_PER_FRAME = 4;
+    //frames kept by the rolling histograms of the frame stats, two seconds at 60fps
+    private static final int FRAME_STATS_WINDOW = 120;
+    //live particles from which the parallel update splits the work, below it stays on the simulation thread
+    private static final int PARALLEL_UPDATE_THRESHOLD = 4096;
+    private static final String TRACE_STEP = "ParticleSystem#step";
+    private static final String TRACE_DRAW = "ParticleSystem#draw";
     private ViewGroup mParentView;
     private int mMaxParticles;
     protected static Random mRandom;
-
-    private ParticleField mDrawingView;
-
-    private ArrayList<Particle> mParticles;
-    private final ArrayList<Particle> mActiveParticles = new ArrayList<Particle>();
+    //shared by all the systems that update in parallel, created on first use
+    private static ForkJoinPool mUpdatePool;
+
+    private volatile ParticleField mDrawingView;
+    //area of the last published frame, and what the next one has to invalidate with it
+    private final Rect mPreviousDirtyRect = new Rect();
+    private final Rect mDirtyRect = new Rect();
+    private final Rect mInvalidateRect = new Rect();
+
+    private ParticleEngine mEngine;
+    private ParticleStore mStore;
+    private FrameExchange mFrameExchange;
+    private Particle[] mParticles;
+    private Bitmap mImage;
+    //the image was acquired from the SpriteCache and is released on free
+    private boolean mImageFromCache;
     protected static int mTimeToLive;
-    private long mCurrentTime = 0;
+    private volatile long mCurrentTime = 0;
 
-    private float mParticlesPerMilisecond;
-    private int mActivatedParticles;
-    private long mEmitingTime;
-
-    private List<ParticleModifier> mModifiers;
-    private List<ParticleInitializer> mInitializers;
     private float mDpToPxScale;
     private int[] mParentLocation;
 
-    private int mEmiterXMin;
-    private int mEmiterXMax;
-    private int mEmiterYMin;
-    private int mEmiterYMax;
-
     private Handler handler;
+    private boolean mBatchedRendering = true;
+    private FrameClock mFrameClock;
+    private boolean mFrameScheduled;
+    //bumped by the UI thread whenever there is new work, the step records the one it found idle
+    private volatile int mWakeGeneration;
+    private volatile int mIdleGeneration = -1;
+    private long mLastFrameTimeNanos = -1;
+    private long mElapsedNanos;
+    //the system cancels itself once its bursts are over
+    private volatile boolean mOneShot;
+    private long mFixedStepNanos;
+    private long mAccumulatorNanos;
+    //the emission starts this far in, see prewarm
+    private long mPrewarmMilis;
+
+    private boolean mSimulationOnWorkerThread;
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
+    private volatile long mPendingFrameTimeNanos;
+    private final AtomicBoolean mStepPending = new AtomicBoolean();
+
+    private volatile FrameStats.Listener mFrameStatsListener;
+    private volatile QualityGovernor mQualityGovernor;
+    //invisible particles are left out of the published frames
+    private final ParticleCuller mCuller = new ParticleCuller();
+    private FrameStats mFrameStats;
+    private long mFrameBudgetNanos = 1000 * NANOS_PER_MILISECOND / 60;
+    private long mReportedSpawnsRefused;
+    private int mReportedDrawCount;
+    private final Runnable mStepRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mStepPending.set(false);
+            step(mPendingFrameTimeNanos);
+        }
+    };
 
 
     public ParticleSystem(ViewGroup mParentView, Drawable drawable, int maxParticles, int timeToLive, float displayScale) {
+        this(mParentView, drawable instanceof BitmapDrawable ? ((BitmapDrawable) drawable).getBitmap() : null,
+                maxParticles, timeToLive, displayScale);
+    }
+
+    /**
+     * The particle image is taken from the shared {@link SpriteCache}, so systems of the same image share one bitmap.
+     */
+    public ParticleSystem(ViewGroup mParentView, int drawableResId, int maxParticles, int timeToLive, float displayScale) {
+        this(mParentView, SpriteCache.getInstance().acquire(mParentView.getResources(), drawableResId),
+                maxParticles, timeToLive, displayScale);
+        mImageFromCache = true;
+    }
+
+    public ParticleSystem(ViewGroup mParentView, Bitmap bitmap, int maxParticles, int timeToLive, float displayScale) {
         mRandom = new Random();
         mParentLocation = new int[2];
         this.mParentView = mParentView;
         setParentViewGroup(mParentView);
-        mModifiers = new ArrayList<ParticleModifier>();
-        mInitializers = new ArrayList<ParticleInitializer>();
         mMaxParticles = maxParticles;
-        // Create the particles
-        mParticles = new ArrayList<Particle>();
         mTimeToLive = timeToLive;
         mDpToPxScale = displayScale;
         handler = new Handler(this);
-        if (drawable instanceof BitmapDrawable) {
-            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
-            for (int i = 0; i < mMaxParticles; i++) {
-                mParticles.add(new Particle(bitmap));
-            }
+        mFrameClock = AnimationTicker.getInstance();
+        // Create the particles, each one is a view over a slot of the store
+        if (bitmap != null) {
+            mImage = bitmap;
+            mEngine = new ParticleEngine(mMaxParticles, mTimeToLive, mRandom);
+        } else {
+            mEngine = new ParticleEngine(0, mTimeToLive, mRandom);
+        }
+        mStore = mEngine.getStore();
+        mFrameExchange = new FrameExchange(mStore.mCapacity);
+        mParticles = new Particle[mStore.mCapacity];
+        for (int i = 0; i < mParticles.length; i++) {
+            mParticles[i] = new Particle(mStore, i, mImage);
         }
 
     }
@@ -96,16 +184,155 @@ public class ParticleSystem implements Handler.Callback {
     }
 
     public ParticleSystem addModifier(ParticleModifier modifier) {
-        mModifiers.add(modifier);
+        mEngine.addModifier(modifier instanceof BatchModifier ? (BatchModifier) modifier
+                : new BatchModifierAdaptor(modifier, mParticles));
+        return this;
+    }
+
+    public ParticleSystem addInitializer(ParticleInitializer initializer) {
+        mEngine.addInitializer(initializer instanceof BatchInitializer ? (BatchInitializer) initializer
+                : new BatchInitializerAdaptor(initializer, mParticles));
         return this;
     }
 
     public ParticleSystem setSpeedByComponentsRange(float speedMinX, float speedMaxX, float speedMinY, float speedMaxY) {
-        mInitializers.add(new SpeedByComponentsInitializer(dpToPx(speedMinX), dpToPx(speedMaxX),
+        return addInitializer(new SpeedByComponentsInitializer(dpToPx(speedMinX), dpToPx(speedMaxX),
                 dpToPx(speedMinY), dpToPx(speedMaxY)));
+    }
+
+    /**
+     * Replace the vsync clock the simulation ticks from, e.g. with a hand driven clock in tests.
+     * Must be called before {@link #emit()} or {@link #oneShot()}.
+     */
+    public ParticleSystem setFrameClock(FrameClock frameClock) {
+        mFrameClock = frameClock;
+        return this;
+    }
+
+    /**
+     * Choose how the particles are drawn, must be called before {@link #emit()} or {@link #oneShot()}.
+     *
+     * @param batched true (the default) to draw all the particles of a frame with a single
+     *                {@code drawVertices} call, false to draw each particle with its own {@code drawBitmap}.
+     *                Canvases without {@code drawVertices} support always use the latter.
+     */
+    public ParticleSystem setBatchedRendering(boolean batched) {
+        mBatchedRendering = batched;
         return this;
     }
 
+    /**
+     * Simulate at a fixed rate independent of the display refresh rate. Every frame runs as many fixed
+     * steps as the elapsed time calls for (at most {@value #MAX_FIXED_STEPS_PER_FRAME}) and draws the
+     * particles interpolated between the last two steps, so fast displays get smooth motion without
+     * simulating more often and slow frames don't drift behind.
+     * Must be called before {@link #emit()} or {@link #oneShot()}.
+     *
+     * @param stepsPerSecond simulation rate, e.g. 30 or 60, 0 (the default) steps once per frame
+     */
+    public ParticleSystem setFixedTimestep(int stepsPerSecond) {
+        mFixedStepNanos = stepsPerSecond > 0 ? 1000 * NANOS_PER_MILISECOND / stepsPerSecond : 0;
+        return this;
+    }
+
+    /**
+     * Run the simulation on a dedicated worker thread instead of the UI thread, the UI thread then only
+     * draws the last published frame. Must be called before {@link #emit()} or {@link #oneShot()}.
+     * <p/>
+     * Modifiers and initializers are called on the worker thread in this mode.
+     */
+    public ParticleSystem setSimulationOnWorkerThread(boolean onWorkerThread) {
+        mSimulationOnWorkerThread = onWorkerThread;
+        return this;
+    }
+
+    /**
+     * Report the cost of every frame, see {@link FrameStats}. The listener is called on the simulation
+     * thread, null (the default) turns the reporting off.
+     */
+    public ParticleSystem setFrameStatsListener(FrameStats.Listener listener) {
+        if (listener != null && mFrameStats == null) {
+            FrameStats stats = new FrameStats();
+            stats.mSimulationHistogram = new RollingHistogram(FRAME_STATS_WINDOW, RollingHistogram.FRAME_TIME_BUCKETS);
+            stats.mDrawHistogram = new RollingHistogram(FRAME_STATS_WINDOW, RollingHistogram.FRAME_TIME_BUCKETS);
+            mFrameStats = stats;
+        }
+        mFrameStatsListener = listener;
+        return this;
+    }
+
+    /**
+     * Let the governor scale the emission rate, the live particle cap and the modifier precision to the
+     * measured cost of every frame, null (the default) keeps the full load. The system starts at the
+     * current quality of the governor, a governor may be reused by the next system once this one is over.
+     * Must be called before {@link #emit()} or {@link #oneShot()}.
+     */
+    public ParticleSystem setQualityGovernor(QualityGovernor governor) {
+        mQualityGovernor = governor;
+        if (governor != null) {
+            governor.applyTo(mEngine);
+        } else {
+            mEngine.setEmissionScale(1);
+            mEngine.setLiveCap(mStore.mCapacity);
+            mEngine.setModifierStride(1);
+        }
+        return this;
+    }
+
+    /**
+     * Leave particles out of the drawn frames when they are fainter or smaller than this,
+     * by default when their alpha is below 1 or their scale is 0. Particles outside the drawing
+     * view, which covers the parent, are always left out. Must be called before {@link #emit()} or {@link #oneShot()}.
+     */
+    public ParticleSystem setCullThresholds(float minAlpha, float minScale) {
+        mCuller.setThresholds(minAlpha, minScale);
+        return this;
+    }
+
+    /**
+     * Stop the particles that are culled instead of only not drawing them, so that their slot is free
+     * for new particles. Only for modifiers that never make an invisible particle visible again,
+     * {@link AlphaModifier} does: its alpha starts below 0. Must be called before {@link #emit()} or {@link #oneShot()}.
+     */
+    public ParticleSystem setRetireCulledParticles(boolean retire) {
+        mCuller.setRetireCulled(retire);
+        return this;
+    }
+
+    /**
+     * Integrate and modify large numbers of particles in chunks on a pool of worker threads, one per core;
+     * with fewer than {@value #PARALLEL_UPDATE_THRESHOLD} live particles the update stays single threaded.
+     * The frame is only published once all the chunks are done.
+     * <p/>
+     * Modifiers are called from several threads at once in this mode, on different particles.
+     */
+    public ParticleSystem setParallelUpdate(boolean parallel) {
+        mEngine.setParallelUpdate(parallel ? getUpdatePool() : null, PARALLEL_UPDATE_THRESHOLD);
+        return this;
+    }
+
+    /**
+     * Keep the particles in a ring buffer in the order they were emitted: every particle of a system has
+     * the same time to live, so the expired ones are always the oldest and expiry costs nothing per particle.
+     * A particle a modifier stops early, or that is culled with {@link #setRetireCulledParticles(boolean)},
+     * only frees its slot once it is the oldest. Must be called before {@link #emit()} or {@link #oneShot()}.
+     *
+     * @param overflowPolicy what happens when the ring is full, {@link ParticleEngine#OVERFLOW_DROP_NEWEST}
+     *                       or {@link ParticleEngine#OVERFLOW_RECYCLE_OLDEST}
+     */
+    public ParticleSystem setRingBuffer(boolean ringBuffer, int overflowPolicy) {
+        mEngine.setRingBuffer(ringBuffer);
+        mEngine.setOverflowPolicy(overflowPolicy);
+        return this;
+    }
+
+    private static synchronized ForkJoinPool getUpdatePool() {
+        if (mUpdatePool == null) {
+            mUpdatePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return mUpdatePool;
+    }
+
     public ParticleSystem setParentViewGroup(ViewGroup viewGroup) {
         mParentView = viewGroup;
         if (mParentView != null) {
@@ -115,93 +342,250 @@ public class ParticleSystem implements Handler.Callback {
     }
 
 
+    /**
+     * Scale the emission rate by the interpolator over the given time since the emission started,
+     * e.g. to fade the emitter in. Must be called before {@link #emit()}.
+     *
+     * @param rateCurve null for a constant rate
+     */
+    public ParticleSystem setEmissionRateCurve(Interpolator rateCurve, long durationMilis) {
+        mEngine.getEmission().setRateCurve(rateCurve != null ? new InterpolatorCurve(rateCurve) : null, durationMilis);
+        return this;
+    }
+
+    /**
+     * Start the emission as if it had been running for the given time already, so a steady effect is
+     * on screen from the first frame instead of building up. Costs one {@link #seek(long)}, however long
+     * the time. Must be called before {@link #emit()}.
+     */
+    public ParticleSystem prewarm(long miliseconds) {
+        mPrewarmMilis = miliseconds;
+        return this;
+    }
+
+    /**
+     * Jump to the given time since the emission started, forwards or backwards: the live particles are
+     * rebuilt as an uninterrupted emission has them at that time, see {@link ParticleEngine#seek(long)},
+     * and the simulation carries on from there. Only particles of modifiers and initializers of the core
+     * kernels (like {@link AlphaModifier}) come out the same on every seek.
+     */
+    public void seek(final long miliseconds) {
+        // The engine belongs to the simulation thread
+        if (mWorkerHandler != null) {
+            mWorkerHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    seekTo(miliseconds);
+                }
+            });
+        } else {
+            seekTo(miliseconds);
+        }
+        if (mDrawingView != null)
+            wake();
+    }
+
+    private void seekTo(long miliseconds) {
+        mElapsedNanos = miliseconds * NANOS_PER_MILISECOND;
+        mAccumulatorNanos = 0;
+        mCurrentTime = miliseconds;
+        mEngine.seek(miliseconds);
+    }
+
+    /**
+     * Emits as many particles per second as the pool holds, see {@link #emit(float)}.
+     */
     public void emit() {
+        emit(mMaxParticles);
+    }
+
+    /**
+     * Emits continuously at the given rate until {@link #stopEmitting()}, independent of the pool size:
+     * particles due while the pool is exhausted are dropped.
+     */
+    public void emit(float particlesPerSecond) {
         // Setup emiter
         configureEmiter(mParentView);
-        startEmiting(mMaxParticles, MESSAGE_LOOP_EMIT);
+        startEmiting(particlesPerSecond, false);
     }
 
     /**
-     * Launches particles in one Shot
+     * Launches particles in one Shot: a {@link #burst(int)} of all the particles of the pool,
+     * the system is cancelled once they are gone.
      */
     public void oneShot() {
-        configureEmiter(mParentView);
-        startEmiting(mMaxParticles, MESSAGE_ONE_SHOT);
+        burst(mMaxParticles);
     }
 
+    /**
+     * Emits count particles on the next frame, see {@link #burst(int, long)}.
+     */
+    public void burst(int count) {
+        burst(count, 0);
+    }
 
-    private void startEmiting(int particlesPerSecond, int messageType) {
-        mActivatedParticles = 0;
-        mParticlesPerMilisecond = particlesPerSecond / 1000f;
+    /**
+     * Emits count particles at once: they take their slots in one pool operation and go through every
+     * initializer in one pass, so the whole burst lands in the same frame.
+     * <p/>
+     * On a system that neither emits nor bursts yet this starts it like {@link #oneShot()}: it is cancelled
+     * once the particles of its bursts are gone.
+     *
+     * @param atTime miliseconds since the system started, the burst goes off on the first frame at or after it
+     */
+    public void burst(final int count, final long atTime) {
+        if (mDrawingView == null) {
+            configureEmiter(mParentView);
+            startEmiting(0, true);
+        }
+        // The engine belongs to the simulation thread
+        if (mWorkerHandler != null) {
+            mWorkerHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mEngine.burst(count, atTime);
+                }
+            });
+        } else {
+            mEngine.burst(count, atTime);
+        }
+        wake();
+    }
+
+
+    private void startEmiting(float particlesPerSecond, boolean oneShot) {
+        mEngine.startEmiting(particlesPerSecond);
+        QualityGovernor governor = mQualityGovernor;
+        if (governor != null) {
+            // Costs measured in a previous run don't count for this one
+            governor.restart();
+            governor.applyTo(mEngine);
+        }
         // Add a full size view to the parent view
         mDrawingView = new ParticleField(mParentView.getContext());
+        mPreviousDirtyRect.setEmpty();
         mParentView.addView(mDrawingView);
-        mEmitingTime = -1; // Meaning infinite
-        mDrawingView.setParticles(mActiveParticles);
-//        updateParticlesBeforeStartTime(particlesPerSecond);
-        handler.sendEmptyMessageDelayed(messageType, TIMMERTASK_INTERVAL);
+        mDrawingView.setParticles(mFrameExchange, mImage);
+        mDrawingView.setBatched(mBatchedRendering);
+        mDrawingView.setParticleSystem(this);
+        if (!oneShot && mPrewarmMilis > 0)
+            seekTo(mPrewarmMilis);
+        mOneShot = oneShot;
+        mLastFrameTimeNanos = -1;
+        Display display = mParentView.getDisplay();
+        if (display != null && display.getRefreshRate() > 0) {
+            mFrameBudgetNanos = (long) (1000 * NANOS_PER_MILISECOND / display.getRefreshRate());
+        }
+        if (mSimulationOnWorkerThread && mWorkerThread == null) {
+            mWorkerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DISPLAY);
+            mWorkerThread.start();
+            mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        }
+        // The drawing view covers the parent, until it is laid out the parent size is the best guess
+        onFieldSizeChanged(mParentView.getWidth(), mParentView.getHeight());
+        wake();
+    }
+
+    /**
+     * Nothing outside of the drawing view is visible, called on the UI thread whenever its size changes.
+     */
+    private void onFieldSizeChanged(final int width, final int height) {
+        // The culler belongs to the simulation thread
+        if (mWorkerHandler != null) {
+            mWorkerHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    setClip(width, height);
+                }
+            });
+        } else {
+            setClip(width, height);
+        }
+    }
+
+    private void setClip(int width, int height) {
+        if (mImage != null && width > 0 && height > 0) {
+            mCuller.setClip(0, 0, width, height, mImage.getWidth() / 2, mImage.getHeight() / 2);
+        } else {
+            // Not laid out yet, nothing is known to be hidden
+            mCuller.clearClip();
+        }
+    }
+
+    private void scheduleFrame() {
+        // At most one callback per frame
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mFrameClock.postFrameCallback(this);
+        }
     }
 
     private void configureEmiter(View emiter) {
         // It works with an emision range
         int[] location = new int[2];
         emiter.getLocationInWindow(location);
-        mEmiterXMin = location[0] + emiter.getWidth() / 2 - mParentLocation[0];
-        mEmiterXMax = mEmiterXMin;
-        mEmiterYMin = location[1] + emiter.getHeight() / 2 - mParentLocation[1];
-        mEmiterYMax = mEmiterYMin;
-    }
-
-    private void activateParticle(long delay) {
-        if (mParticles != null && mParticles.size() > 0) {
-            Particle p = mParticles.remove(0);
-            p.init();
-            // Initialization goes before configuration, scale is required before can be configured properly
-            for (int i = 0; i < mInitializers.size(); i++) {
-                mInitializers.get(i).initParticle(p, mRandom);
-            }
-            int particleX = getFromRange(mEmiterXMin, mEmiterXMax);
-            int particleY = getFromRange(mEmiterYMin, mEmiterYMax);
-            p.configure(mTimeToLive, particleX, particleY);
-            p.activate(delay, mModifiers);
-            mActiveParticles.add(p);
-            mActivatedParticles++;
+        int emiterX = location[0] + emiter.getWidth() / 2 - mParentLocation[0];
+        int emiterY = location[1] + emiter.getHeight() / 2 - mParentLocation[1];
+        // The engine places the top left corner of the particles
+        if (mImage != null) {
+            emiterX -= mImage.getWidth() / 2;
+            emiterY -= mImage.getHeight() / 2;
         }
+        mEngine.setEmiter(emiterX, emiterX, emiterY, emiterY);
     }
 
-    private int getFromRange(int minValue, int maxValue) {
-        if (minValue == maxValue) {
-            return minValue;
+    /**
+     * Hands the current state to the drawing view.
+     *
+     * @param interpolation fraction of a fixed step to blend towards the current state, negative without fixed steps
+     */
+    private void publishFrame(float interpolation) {
+        if (interpolation < 0) {
+            mFrameExchange.back().copyFrom(mStore, mCuller);
+        } else {
+            mFrameExchange.back().interpolateFrom(mStore, interpolation, mCuller);
         }
-        return mRandom.nextInt(maxValue - minValue) + minValue;
-    }
-
-    private void onUpdate(long miliseconds) {
-        while (((mEmitingTime > 0 && miliseconds < mEmitingTime) || mEmitingTime == -1) && // This le_control_center_point should emit
-                !mParticles.isEmpty() && // We have particles in the pool
-                mActivatedParticles < mParticlesPerMilisecond * miliseconds) { // and we are under the number of particles that should be launched
-            // Activate a new particle
-            activateParticle(miliseconds);
+        ParticleFrame frame = mFrameExchange.back();
+        // Without a sprite the pool is empty and nothing is ever drawn
+        if (mImage == null) {
+            mFrameExchange.publish();
+            return;
         }
-        synchronized (mActiveParticles) {
-            for (int i = 0; i < mActiveParticles.size(); i++) {
-                boolean active = mActiveParticles.get(i).update(miliseconds);
-                if (!active) {
-                    Particle p = mActiveParticles.remove(i);
-                    i--; // Needed to keep the index at the right position
-                    mParticles.add(p);
-                }
-            }
-        }
-        if (mDrawingView != null)
-            mDrawingView.postInvalidate();
+        frame.computeBounds(mImage.getWidth() / 2, mImage.getHeight() / 2);
+        mFrameExchange.publish();
+        ParticleField drawingView = mDrawingView;
+        if (drawingView == null)
+            return;
+        // The particles must be erased where they were and drawn where they are now
+        mDirtyRect.set((int) Math.floor(frame.mLeft) - 1, (int) Math.floor(frame.mTop) - 1,
+                (int) Math.ceil(frame.mRight) + 1, (int) Math.ceil(frame.mBottom) + 1);
+        if (frame.mCount == 0)
+            mDirtyRect.setEmpty();
+        mInvalidateRect.set(mDirtyRect);
+        mInvalidateRect.union(mPreviousDirtyRect);
+        mPreviousDirtyRect.set(mDirtyRect);
+        if (!mInvalidateRect.isEmpty())
+            drawingView.postInvalidate(mInvalidateRect.left, mInvalidateRect.top, mInvalidateRect.right, mInvalidateRect.bottom);
     }
 
     private void cleanupAnimation() {
         mParentView.removeView(mDrawingView);
         mDrawingView = null;
         mParentView.postInvalidate();
-        mParticles.addAll(mActiveParticles);
+        // The store belongs to the simulation thread
+        if (mWorkerThread != null) {
+            mWorkerHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mStore.retireAll();
+                }
+            });
+            mWorkerThread.quitSafely();
+            mWorkerThread = null;
+            mWorkerHandler = null;
+        } else {
+            mStore.retireAll();
+        }
     }
 
     /**
@@ -210,7 +594,7 @@ public class ParticleSystem implements Handler.Callback {
      */
     public void stopEmitting() {
         // The time to be emiting is the current time (as if it was a time-limited emiter
-        mEmitingTime = mCurrentTime;
+        mEngine.stopEmiting(mCurrentTime);
     }
 
     /**
@@ -225,6 +609,10 @@ public class ParticleSystem implements Handler.Callback {
         if (mDrawingView != null)
             mDrawingView.free();
         cleanupAnimation();
+        if (mImageFromCache) {
+            mImageFromCache = false;
+            SpriteCache.getInstance().release(mImage);
+        }
     }
 
 
@@ -234,30 +622,10 @@ public class ParticleSystem implements Handler.Callback {
         if (msg == null)
             return false;
         switch (msg.what) {
-            case MESSAGE_LOOP_EMIT: {
-                this.onUpdate(mCurrentTime);
-                mCurrentTime += TIMMERTASK_INTERVAL;
-                handler.sendEmptyMessageDelayed(MESSAGE_LOOP_EMIT, 1);
-                break;
-            }
-            case MESSAGE_ONE_SHOT: {
-
-                if (msg.arg1 > mTimeToLive) {
-                    handler.sendEmptyMessage(MESSAGE_CANCLE);
-
-                } else {
-                    Message message = handler.obtainMessage();
-                    message.what = MESSAGE_ONE_SHOT;
-                    message.arg1 = msg.arg1 + 40;
-                    this.onUpdate(mCurrentTime);
-                    mCurrentTime += TIMMERTASK_INTERVAL;
-                    handler.sendMessageDelayed(message, 1);
-                }
-                break;
-
-            }
             case MESSAGE_CANCLE: {
                 handler.removeCallbacksAndMessages(null);
+                mFrameClock.removeFrameCallback(this);
+                mFrameScheduled = false;
                 this.free();
                 break;
             }
@@ -266,6 +634,143 @@ public class ParticleSystem implements Handler.Callback {
         return false;
     }
 
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (mWorkerHandler != null) {
+            // Never queue more than one step, a late worker just catches up with the newest frame time
+            mPendingFrameTimeNanos = frameTimeNanos;
+            if (mStepPending.compareAndSet(false, true)) {
+                mWorkerHandler.post(mStepRunnable);
+            }
+        } else {
+            step(frameTimeNanos);
+        }
+        // Leave the ticker once there is nothing left to simulate, emit, burst and seek come back to it
+        if (mIdleGeneration != mWakeGeneration)
+            scheduleFrame();
+    }
+
+    /**
+     * Back on the ticker after new work was handed to the engine, UI thread only.
+     */
+    private void wake() {
+        mWakeGeneration++;
+        scheduleFrame();
+    }
+
+    /**
+     * Advances the simulation by the real time elapsed since the previous frame, runs on the simulation thread.
+     */
+    private void step(long frameTimeNanos) {
+        final FrameStats.Listener listener = mFrameStatsListener;
+        final QualityGovernor governor = mQualityGovernor;
+        final boolean measured = listener != null || governor != null;
+        final long intervalNanos = mLastFrameTimeNanos >= 0 ? frameTimeNanos - mLastFrameTimeNanos : 0;
+        final long startNanos = measured ? System.nanoTime() : 0;
+        final int wakeGeneration = mWakeGeneration;
+        Trace.beginSection(TRACE_STEP);
+        boolean published;
+        try {
+            published = simulate(frameTimeNanos);
+        } finally {
+            Trace.endSection();
+        }
+        // Work handed over after the step started keeps the system awake
+        mIdleGeneration = mEngine.isIdle(mCurrentTime) ? wakeGeneration : -1;
+        if (!measured || !published)
+            return;
+        final long simulationNanos = System.nanoTime() - startNanos;
+        if (listener != null)
+            reportFrameStats(listener, frameTimeNanos, intervalNanos, simulationNanos);
+        if (governor != null) {
+            ParticleField drawingView = mDrawingView;
+            long drawNanos = drawingView != null ? drawingView.mLastDrawNanos : 0;
+            if (governor.onFrame(simulationNanos + drawNanos, mFrameBudgetNanos, getMissedVsyncs(intervalNanos)))
+                governor.applyTo(mEngine);
+        }
+    }
+
+    private int getMissedVsyncs(long intervalNanos) {
+        // Half a period of jitter is not a missed vsync
+        return intervalNanos > mFrameBudgetNanos * 3 / 2
+                ? (int) ((intervalNanos + mFrameBudgetNanos / 2) / mFrameBudgetNanos) - 1 : 0;
+    }
+
+    /**
+     * @return false if nothing was published because the one shot is over
+     */
+    private boolean simulate(long frameTimeNanos) {
+        long deltaNanos = 0;
+        if (mLastFrameTimeNanos >= 0 && frameTimeNanos > mLastFrameTimeNanos) {
+            deltaNanos = frameTimeNanos - mLastFrameTimeNanos;
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        if (mFixedStepNanos <= 0) {
+            mElapsedNanos += deltaNanos;
+            if (!advanceTo(mElapsedNanos / NANOS_PER_MILISECOND))
+                return false;
+            publishFrame(-1);
+            return true;
+        }
+
+        mAccumulatorNanos += deltaNanos;
+        int steps = 0;
+        while (mAccumulatorNanos >= mFixedStepNanos && steps < MAX_FIXED_STEPS_PER_FRAME) {
+            mStore.savePrevious();
+            mElapsedNanos += mFixedStepNanos;
+            mAccumulatorNanos -= mFixedStepNanos;
+            steps++;
+            if (!advanceTo(mElapsedNanos / NANOS_PER_MILISECOND))
+                return false;
+        }
+        if (mAccumulatorNanos >= mFixedStepNanos) {
+            // Too far behind, drop the backlog instead of spiralling
+            mAccumulatorNanos %= mFixedStepNanos;
+        }
+        publishFrame((float) mAccumulatorNanos / mFixedStepNanos);
+        return true;
+    }
+
+    private void reportFrameStats(FrameStats.Listener listener, long frameTimeNanos, long intervalNanos, long simulationNanos) {
+        final FrameStats stats = mFrameStats;
+        stats.mFrameTimeNanos = frameTimeNanos;
+        stats.mFrameBudgetNanos = mFrameBudgetNanos;
+        stats.mSimulationNanos = simulationNanos;
+        stats.mSimulationHistogram.record(simulationNanos);
+        ParticleField drawingView = mDrawingView;
+        if (drawingView != null && drawingView.mDrawCount != mReportedDrawCount) {
+            // Only a new draw goes into the histogram
+            mReportedDrawCount = drawingView.mDrawCount;
+            stats.mDrawNanos = drawingView.mLastDrawNanos;
+            stats.mDrawHistogram.record(stats.mDrawNanos);
+        }
+        stats.mLiveParticles = mStore.mActiveCount;
+        stats.mCulledParticles = mCuller.getCulledCount();
+        long spawnsRefused = mEngine.getSpawnsRefused();
+        stats.mSpawnsRefused = (int) (spawnsRefused - mReportedSpawnsRefused);
+        mReportedSpawnsRefused = spawnsRefused;
+        stats.mEmissionDeficit = mEngine.getEmissionDeficit();
+        stats.mMissedVsyncs = getMissedVsyncs(intervalNanos);
+        listener.onFrameStats(stats);
+    }
+
+    /**
+     * @return false if the one shot is over and the system is being cancelled
+     */
+    private boolean advanceTo(long miliseconds) {
+        mCurrentTime = miliseconds;
+        mEngine.update(mCurrentTime);
+        if (mOneShot && mStore.mActiveCount == 0 && !mEngine.hasPendingBursts()) {
+            // Every particle of the bursts is gone
+            mOneShot = false;
+            handler.sendEmptyMessage(MESSAGE_CANCLE);
+            return false;
+        }
+        return true;
+    }
+
 
     //-----------------------------------Particle class------------------------------------
 
@@ -274,7 +779,15 @@ public class ParticleSystem implements Handler.Callback {
      */
     static class ParticleField extends View {
 
-        private ArrayList<Particle> mParticles;
+        private FrameExchange mFrameExchange;
+        private Bitmap mImage;
+        private final Matrix mMatrix = new Matrix();
+        private final Paint mPaint = new Paint();
+        private SpriteBatch mSpriteBatch;
+        private ParticleSystem mParticleSystem;
+        //written on the UI thread, read by the frame stats on the simulation thread
+        volatile long mLastDrawNanos;
+        volatile int mDrawCount;
 
         public ParticleField(Context context, AttributeSet attrs, int defStyle) {
             super(context, attrs, defStyle);
@@ -288,27 +801,69 @@ public class ParticleSystem implements Handler.Callback {
             super(context);
         }
 
-        public void setParticles(ArrayList<Particle> particles) {
-            mParticles = particles;
+        public void setParticles(FrameExchange frameExchange, Bitmap image) {
+            mFrameExchange = frameExchange;
+            mImage = image;
         }
 
-        public void free() {
-            synchronized (mParticles) {
-                for (int i = 0; i < mParticles.size(); i++) {
-                    mParticles.get(i).free();
-                }
+        /**
+         * @param particleSystem told about every size change, it culls what falls outside of this view
+         */
+        public void setParticleSystem(ParticleSystem particleSystem) {
+            mParticleSystem = particleSystem;
+        }
+
+        @Override
+        protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+            super.onSizeChanged(w, h, oldw, oldh);
+            if (mParticleSystem != null)
+                mParticleSystem.onFieldSizeChanged(w, h);
+        }
+
+        /**
+         * @param batched true to draw all the particles with one {@link SpriteBatch} call,
+         *                false to draw them one {@code drawBitmap} at a time
+         */
+        public void setBatched(boolean batched) {
+            mSpriteBatch = batched ? new SpriteBatch() : null;
+        }
 
+        public void free() {
+            if (this.mImage != null && this.mImage.isRecycled()) {
+                this.mImage.recycle();
             }
         }
 
         @Override
         protected void onDraw(Canvas canvas) {
             super.onDraw(canvas);
-            // Draw all the particles
-            synchronized (mParticles) {
-                for (int i = 0; i < mParticles.size(); i++) {
-                    mParticles.get(i).drawPoint(canvas);
-                }
+            // Draw all the particles of the last published frame
+            if (mFrameExchange == null || mImage == null)
+                return;
+            final long startNanos = System.nanoTime();
+            Trace.beginSection(TRACE_DRAW);
+            try {
+                drawFrame(canvas, mFrameExchange.acquire());
+            } finally {
+                Trace.endSection();
+            }
+            mLastDrawNanos = System.nanoTime() - startNanos;
+            mDrawCount++;
+        }
+
+        private void drawFrame(Canvas canvas, ParticleFrame frame) {
+            if (mSpriteBatch != null && SpriteBatch.isSupported(canvas)) {
+                mSpriteBatch.draw(canvas, frame, mImage);
+                return;
+            }
+            final float halfWidth = mImage.getWidth() / 2;
+            final float halfHeight = mImage.getHeight() / 2;
+            for (int i = 0; i < frame.mCount; i++) {
+                mMatrix.reset();
+                mMatrix.postScale(frame.mScale[i], frame.mScale[i], halfWidth, halfHeight);
+                mMatrix.postTranslate(frame.mX[i], frame.mY[i]);
+                mPaint.setAlpha((int) frame.mAlpha[i]);
+                canvas.drawBitmap(mImage, mMatrix, mPaint);
             }
         }
     }
@@ -316,6 +871,9 @@ public class ParticleSystem implements Handler.Callback {
     /**
      * The Particle class ,include all Attribute.
      * The Method {@link #drawPoint(Canvas)} to finish show Particle animation throw {@link Matrix} change.
+     * <p/>
+     * Inside a {@link ParticleSystem} a Particle is a view over one slot of the {@link ParticleStore}:
+     * {@link #load()} copies the slot into the public fields and {@link #commit()} writes them back.
      */
     public static class Particle {
 
@@ -351,10 +909,11 @@ public class ParticleSystem implements Handler.Callback {
 
         private List<ParticleModifier> mModifiers;
 
-        protected Particle() {
-            mMatrix = new Matrix();
-            mPaint = new Paint();
+        private ParticleStore mStore;
+        final int mSlot;
 
+        protected Particle() {
+            mSlot = -1;
         }
 
         public Particle(Bitmap bitmap) {
@@ -362,6 +921,72 @@ public class ParticleSystem implements Handler.Callback {
             mImage = bitmap;
         }
 
+        Particle(ParticleStore store, int slot, Bitmap bitmap) {
+            mStore = store;
+            mSlot = slot;
+            mImage = bitmap;
+            if (bitmap != null) {
+                mBitmapHalfWidth = bitmap.getWidth() / 2;
+                mBitmapHalfHeight = bitmap.getHeight() / 2;
+            }
+        }
+
+        /**
+         * copy the values of the slot into the fields of this view, nothing to do for a standalone particle
+         */
+        void load() {
+            final ParticleStore store = mStore;
+            if (store == null)
+                return;
+            final int slot = mSlot;
+            mCurrentX = store.mX[slot];
+            mCurrentY = store.mY[slot];
+            mScale = store.mScale[slot];
+            mAlpha = (int) store.mAlpha[slot];
+            mAlphaInitialValue = store.mAlphaInitialValue[slot];
+            mAlphaFinalValue = store.mAlphaFinalValue[slot];
+            mAlphaValueIncrement = store.mAlphaValueIncrement[slot];
+            mScaleInitialValue = store.mScaleInitialValue[slot];
+            mScaleFinalValue = store.mScaleFinalValue[slot];
+            mSpeedX = store.mSpeedX[slot];
+            mSpeedY = store.mSpeedY[slot];
+            mAccelerationX = store.mAccelerationX[slot];
+            mAccelerationY = store.mAccelerationY[slot];
+            mInitialX = store.mInitialX[slot];
+            mInitialY = store.mInitialY[slot];
+            mTimeToLive = store.mTimeToLive[slot];
+            mStartingMilisecond = store.mStartingMilisecond[slot];
+            isRun = store.mRunning[slot];
+        }
+
+        /**
+         * write the fields of this view back to the slot, nothing to do for a standalone particle
+         */
+        void commit() {
+            final ParticleStore store = mStore;
+            if (store == null)
+                return;
+            final int slot = mSlot;
+            store.mX[slot] = mCurrentX;
+            store.mY[slot] = mCurrentY;
+            store.mScale[slot] = mScale;
+            store.mAlpha[slot] = mAlpha;
+            store.mAlphaInitialValue[slot] = mAlphaInitialValue;
+            store.mAlphaFinalValue[slot] = mAlphaFinalValue;
+            store.mAlphaValueIncrement[slot] = mAlphaValueIncrement;
+            store.mScaleInitialValue[slot] = mScaleInitialValue;
+            store.mScaleFinalValue[slot] = mScaleFinalValue;
+            store.mSpeedX[slot] = mSpeedX;
+            store.mSpeedY[slot] = mSpeedY;
+            store.mAccelerationX[slot] = mAccelerationX;
+            store.mAccelerationY[slot] = mAccelerationY;
+            store.mInitialX[slot] = mInitialX;
+            store.mInitialY[slot] = mInitialY;
+            store.mTimeToLive[slot] = mTimeToLive;
+            store.mStartingMilisecond[slot] = mStartingMilisecond;
+            store.mRunning[slot] = isRun;
+        }
+
         public void init() {
             mScale = 1;
             mAlpha = 255;
@@ -398,6 +1023,10 @@ public class ParticleSystem implements Handler.Callback {
         public void drawPoint(Canvas c) {
             if (!isRun)
                 return;
+            if (mMatrix == null) {
+                mMatrix = new Matrix();
+                mPaint = new Paint();
+            }
 
             mMatrix.reset();
             mMatrix.postScale(mScale, mScale, mBitmapHalfWidth, mBitmapHalfHeight);
@@ -438,31 +1067,84 @@ public class ParticleSystem implements Handler.Callback {
 
     }
 
+    /**
+     * Runs a single particle {@link ParticleModifier} through the {@link Particle} view of each slot.
+     */
+    private static class BatchModifierAdaptor implements BatchModifier {
+
+        private final ParticleModifier mModifier;
+        private final Particle[] mParticles;
+
+        BatchModifierAdaptor(ParticleModifier modifier, Particle[] particles) {
+            mModifier = modifier;
+            mParticles = particles;
+        }
+
+        @Override
+        public void applyBatch(ParticleStore store, int[] slots, long[] ages, int from, int to) {
+            for (int i = from; i < to; i++) {
+                Particle particle = mParticles[slots[i]];
+                particle.load();
+                if (!mModifier.apply(particle, ages[i])) {
+                    particle.isRun = false;
+                }
+                particle.commit();
+            }
+        }
+    }
+
+    /**
+     * Runs a single particle {@link ParticleInitializer} through the {@link Particle} view of each slot.
+     */
+    private static class BatchInitializerAdaptor implements BatchInitializer {
+
+        private final ParticleInitializer mInitializer;
+        private final Particle[] mParticles;
+
+        BatchInitializerAdaptor(ParticleInitializer initializer, Particle[] particles) {
+            mInitializer = initializer;
+            mParticles = particles;
+        }
+
+        @Override
+        public void initBatch(ParticleStore store, int[] slots, int from, int to, Random r) {
+            for (int i = from; i < to; i++) {
+                Particle particle = mParticles[slots[i]];
+                particle.load();
+                mInitializer.initParticle(particle, r);
+                particle.commit();
+            }
+        }
+    }
+
     /**
      * Change the Particle's size as time go throw{@link #apply(Particle, long)}
      */
-    public static class ScaleModifier implements ParticleModifier {
+    public static class ScaleModifier extends ScaleKernel implements ParticleModifier {
 
-        private float mInitialValue;
-        private float mFinalValue;
-        private long mEndTime;
-        private long mStartTime;
-        private long mDuration;
-        private Interpolator mInterpolator;
+        //only for the per particle apply, the kernel seeds its values on spawn
+        private final Random mRandom = new Random();
 
         public ScaleModifier(float initialValue, float finalValue, long startMilis, long endMilis, Interpolator interpolator) {
-            mInitialValue = initialValue;
-            mFinalValue = finalValue;
-            mStartTime = startMilis;
-            mEndTime = endMilis;
-            mDuration = mEndTime - mStartTime;
-            mInterpolator = interpolator;
+            super(initialValue, finalValue, startMilis, endMilis, new InterpolatorCurve(interpolator));
         }
 
         public ScaleModifier(float initialValue, float finalValue, long startMilis, long endMilis) {
             this(initialValue, finalValue, startMilis, endMilis, new SinInterpolator());
         }
 
+        /**
+         * Sample the interpolator once into a table, see {@link BakedCurve}
+         *
+         * @param resolution number of samples
+         * @return this
+         */
+        @Override
+        public ScaleModifier bake(int resolution) {
+            super.bake(resolution);
+            return this;
+        }
+
         @Override
         public boolean apply(Particle particle, long miliseconds) {
 
@@ -480,7 +1162,7 @@ public class ParticleSystem implements Handler.Callback {
                 particle.mScale = 0;
                 return false;
             } else {
-                particle.mScale = particle.mScaleInitialValue * mInterpolator.getInterpolation((miliseconds - mStartTime) * 1f / mDuration);
+                particle.mScale = particle.mScaleInitialValue * mCurve.getInterpolation((miliseconds - mStartTime) / mDuration);
             }
             return true;
 
@@ -497,31 +1179,74 @@ public class ParticleSystem implements Handler.Callback {
         }
     }
 
+    /**
+     * An {@link Interpolator} sampled once into a float table, {@link #getInterpolation(float)} is a
+     * lookup with linear interpolation between the two closest samples instead of evaluating the curve.
+     * Input is clamped to [0, 1].
+     */
+    public static class BakedInterpolator implements Interpolator {
+
+        private final BakedCurve mCurve;
+
+        /**
+         * @param interpolator the curve to sample
+         * @param resolution   number of samples, at least 2
+         */
+        public BakedInterpolator(Interpolator interpolator, int resolution) {
+            mCurve = new BakedCurve(new InterpolatorCurve(interpolator), resolution);
+        }
+
+        @Override
+        public float getInterpolation(float input) {
+            return mCurve.getInterpolation(input);
+        }
+    }
+
+    /**
+     * Lets the {@link Curve} based kernels of the core run an Android {@link Interpolator}.
+     */
+    private static class InterpolatorCurve implements Curve {
+
+        private final Interpolator mInterpolator;
+
+        InterpolatorCurve(Interpolator interpolator) {
+            mInterpolator = interpolator;
+        }
+
+        @Override
+        public float getInterpolation(float input) {
+            return mInterpolator.getInterpolation(input);
+        }
+    }
+
     /**
      * Change the Particle's transparency as time go throw {@link #apply(Particle, long)}
      */
-    public static class AlphaModifier implements ParticleModifier {
+    public static class AlphaModifier extends AlphaKernel implements ParticleModifier {
 
-        private int mInitialValue;
-        private int mFinalValue;
-        private long mStartTime;
-        private long mEndTime;
-        private float mDuration;
-        private Interpolator mInterpolator;
+        //only for the per particle apply, the kernel seeds its values on spawn
+        private final Random mRandom = new Random();
 
         public AlphaModifier(int initialValue, int finalValue, long startMilis, long endMilis, Interpolator interpolator) {
-            mInitialValue = initialValue;
-            mFinalValue = finalValue;
-            mStartTime = startMilis;
-            mEndTime = endMilis;
-            mDuration = mEndTime - mStartTime;
-            mInterpolator = interpolator;
+            super(initialValue, finalValue, startMilis, endMilis, new InterpolatorCurve(interpolator));
         }
 
         public AlphaModifier(int initialValue, int finalValue, long startMilis, long endMilis) {
             this(initialValue, finalValue, startMilis, endMilis, new LinearInterpolator());
         }
 
+        /**
+         * Sample the interpolator once into a table, see {@link BakedCurve}
+         *
+         * @param resolution number of samples
+         * @return this
+         */
+        @Override
+        public AlphaModifier bake(int resolution) {
+            super.bake(resolution);
+            return this;
+        }
+
         @Override
         public boolean apply(Particle particle, long miliseconds) {
 
@@ -551,7 +1276,7 @@ public class ParticleSystem implements Handler.Callback {
                 particle.mScale = 0;
                 return false;
             } else {
-                float interpolaterdValue = mInterpolator.getInterpolation((miliseconds - mStartTime) * 1f / mDuration);
+                float interpolaterdValue = mCurve.getInterpolation((miliseconds - mStartTime) / mDuration);
                 int newAlphaValue = (int) (particle.mAlphaInitialValue + particle.mAlphaValueIncrement * interpolaterdValue);
                 particle.mAlpha = newAlphaValue;
             }
@@ -570,18 +1295,10 @@ public class ParticleSystem implements Handler.Callback {
 
     }
 
-    public static class SpeedByComponentsInitializer implements ParticleInitializer {
-
-        private float mMinSpeedX;
-        private float mMaxSpeedX;
-        private float mMinSpeedY;
-        private float mMaxSpeedY;
+    public static class SpeedByComponentsInitializer extends SpeedByComponentsKernel implements ParticleInitializer {
 
         public SpeedByComponentsInitializer(float speedMinX, float speedMaxX, float speedMinY, float speedMaxY) {
-            mMinSpeedX = speedMinX;
-            mMaxSpeedX = speedMaxX;
-            mMinSpeedY = speedMinY;
-            mMaxSpeedY = speedMaxY;
+            super(speedMinX, speedMaxX, speedMinY, speedMaxY);
         }
 
         @Override
@@ -4,19 +4,25 @@ import android.animation.Animator;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Message;
+import android.os.Trace;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
+import android.view.Choreographer;
+import android.view.View;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.view.animation.LinearInterpolator;
 import android.view.animation.PathInterpolator;
 
+import com.rocf.pinwheel.core.QualityGovernor;
+
 
 /**
  * <p>
@@ -29,28 +35,49 @@ import android.view.animation.PathInterpolator;
  * in the end of use it ,call {@link #free()}
  * <p/>
  * That's all ,enjoy it.
+ * <p/>
+ * On hardware accelerated windows the pinwheel is a child view whose rotation is a render property,
+ * so spinning neither redraws the progress bar nor records a new display list for the wheel.
  *
  * @author rocf.wong@gmail.com create by 2016/08/10
  */
-public class PinWheelWidget extends CircleProgressBar implements Handler.Callback {
+public class PinWheelWidget extends CircleProgressBar implements Handler.Callback, Choreographer.FrameCallback {
     private static final String TAG = "PinWheelWidget";
 
     //Handle message
-    private static final int UNIFORM = 1; //to keep the speed of pinwheel
     private static final int STOP_EMIT = 2;//stop toast particle
     private static final int CANCEL_EMIT = 3;//cancel particle
     private static final int DOWN_PINWHEEL = 4;//make pinwheel's speed slow
     private static final int CANCLE_ALL_MESSAGE = 5;
 
+    private static final String TRACE_FRAME = "PinWheelWidget#doFrame";
+    private static final String TRACE_DRAW = "PinWheelWidget#draw";
+
 
     //PinWheel
     private Bitmap pinWheelBmp = null;
     private volatile float rotationDegree = 0;
     public static final float UNIFORM_DEGREE = 16;
+    //UNIFORM_DEGREE was the step of one 60fps frame, the wheel now turns at this velocity whatever the refresh rate
+    private static final float UNIFORM_DEGREE_PER_SECOND = UNIFORM_DEGREE * 60;
+    //below one degree per 60fps frame the spin down stops the wheel
+    private static final float MIN_DEGREE_PER_SECOND = 60;
+    private static final float NANOS_PER_SECOND = 1000000000f;
+    //degrees per second, integrated against the frame time by doFrame
+    private float angularVelocity = 0;
     private float xScaleFactor = 0;
     private float yScaleFactor = 0;
     private float pXyx = 0;
     private float pXyy = 0;
+    private final Matrix pinWheelMatrix = new Matrix();
+    //covers the wheel at every rotation, empty until the scale factors are known
+    private final Rect wheelBounds = new Rect();
+    //pre-rendered rotation frames, optional
+    private int rotationSymmetry = 0;
+    private int rotationFrameCount = 0;
+    private RotationFrameCache rotationFrameCache = null;
+    //hosts the pinwheel on hardware accelerated windows, null when it is drawn by drawCustomView
+    private WheelView wheelView = null;
 //    private int uniformRat = 8;
 
 
@@ -75,9 +102,15 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
     private DisplayMetrics displayMetrics;
     private float mDpToPxScale;
     private float mDensity;
-    private volatile boolean UNIFORM_STATE;
+    private volatile boolean SPIN_STATE;
     private volatile boolean ROTATION_STATE;
 
+    private FrameClock mFrameClock;
+    private FrameStats.Listener mFrameStatsListener;
+    private QualityGovernor mQualityGovernor;
+    private boolean mFrameScheduled;
+    private long mLastFrameTimeNanos = -1;
+
 
     public PinWheelWidget(Context context) {
         super(context);
@@ -93,9 +126,8 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
         setStartDegree(-222);
         setTotalDegree(264);
         setMax(100.0f);
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inDensity = (int) getResources().getDisplayMetrics().density;
-        pinWheelBmp = BitmapFactory.decodeResource(getResources(), R.drawable.le_control_center_pinwheel);
+        // Shared by all the widgets
+        pinWheelBmp = SpriteCache.getInstance().acquire(getResources(), R.drawable.le_control_center_pinwheel);
     }
 
 
@@ -126,12 +158,15 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
 
             throw new IllegalArgumentException("PinWheel#handler is null,you must call PinWheel#init()");
         }
-        particleSystem = new ParticleSystem(PinWheelWidget.this, getResources().getDrawable(R.drawable.le_control_center_point), 30, 6000, mDpToPxScale);
+        particleSystem = new ParticleSystem(PinWheelWidget.this, R.drawable.le_control_center_point, 30, 6000, mDpToPxScale);
+        particleSystem.setFrameClock(mFrameClock);
+        particleSystem.setFrameStatsListener(mFrameStatsListener);
+        particleSystem.setQualityGovernor(mQualityGovernor);
 
         particleSystem
                 .setSpeedByComponentsRange(-0.08f, 0.08f, -0.08f, 0.08f)
                 .addModifier(new ParticleSystem.AlphaModifier(-250, 250, 0, 2000))
-                .addModifier(new ParticleSystem.ScaleModifier(0.3f, 0.5f, 0, 400));
+                .addModifier(new ParticleSystem.ScaleModifier(0.3f, 0.5f, 0, 400).bake(128));
         particleSystem.emit();
 
         progressbarStartAnimator = ValueAnimator.ofFloat(getProgress(), 0.0f);
@@ -156,23 +191,21 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
 
         progressbarStartAnimator.setDuration(mProgressbarDuration);
 
-        pinWheelUpSpeedAnimator = ValueAnimator.ofFloat(0.0f, UNIFORM_DEGREE);
+        pinWheelUpSpeedAnimator = ValueAnimator.ofFloat(0.0f, UNIFORM_DEGREE_PER_SECOND);
         pinWheelUpSpeedAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
 
-                PinWheelWidget.this.setRotationDegree((Float) animation.getAnimatedValue());
+                PinWheelWidget.this.angularVelocity = (Float) animation.getAnimatedValue();
 
             }
         });
 
         pinWheelUpSpeedAnimator.addListener(new PinWheelAnimatorListener() {
             @Override
-            public void onAnimationEnd(Animator animation) {
+            public void onAnimationStart(Animator animation) {
 
-                UNIFORM_STATE = true;
-                handler.sendEmptyMessageDelayed(PinWheelWidget.UNIFORM, 0);
-                PinWheelWidget.this.rotationDegree = 0;
+                startSpin();
 
             }
         });
@@ -200,23 +233,18 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
             return false;
         PinWheelWidget.this.rotationDegree = 0;
 
-        pinWheelDownAnimator = ValueAnimator.ofFloat(UNIFORM_DEGREE, 0);
+        pinWheelDownAnimator = ValueAnimator.ofFloat(UNIFORM_DEGREE_PER_SECOND, 0);
         pinWheelDownAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
                 float value = (float) animation.getAnimatedValue();
-                if (value > 1f)
-                    PinWheelWidget.this.setRotationDegree(value);
+                PinWheelWidget.this.angularVelocity = value > MIN_DEGREE_PER_SECOND ? value : 0;
             }
         });
         pinWheelDownAnimator.addListener(new PinWheelAnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                UNIFORM_STATE = false;
-            }
-
             @Override
             public void onAnimationEnd(Animator animation) {
+                stopSpin();
                 ROTATION_STATE = true;
                 handler.sendEmptyMessageDelayed(PinWheelWidget.CANCEL_EMIT, 5);
                 //                PinWheelWidget.this.rotationDegree = 0;
@@ -275,6 +303,8 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
 
         this.rotationDegree = 0;
         handler = new Handler(this);
+        if (mFrameClock == null)
+            mFrameClock = AnimationTicker.getInstance();
         displayMetrics = getResources().getDisplayMetrics();
         mDpToPxScale = (displayMetrics.xdpi / DisplayMetrics.DENSITY_DEFAULT);
         mDensity = getResources().getDisplayMetrics().density;
@@ -288,6 +318,99 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
     }
 
 
+    /**
+     * Replace the vsync clock the pinwheel and its particles tick from, e.g. with a hand driven clock in tests.
+     * Must be called before {@link #start()}.
+     */
+    public void setFrameClock(FrameClock frameClock) {
+        mFrameClock = frameClock;
+    }
+
+    /**
+     * Report the cost of every particle frame, see {@link ParticleSystem#setFrameStatsListener(FrameStats.Listener)}.
+     * Takes effect with the next {@link #start()}, null turns the reporting off.
+     */
+    public void setFrameStatsListener(FrameStats.Listener listener) {
+        mFrameStatsListener = listener;
+    }
+
+    /**
+     * Scale the particle load to the frame budget, see {@link ParticleSystem#setQualityGovernor(QualityGovernor)}.
+     * Takes effect with the next {@link #start()}, every start continues from the quality the previous one ended at.
+     */
+    public void setQualityGovernor(QualityGovernor governor) {
+        mQualityGovernor = governor;
+    }
+
+    /**
+     * Pre-render the pinwheel at its on-screen size for a set of angles and blit the closest one every
+     * frame instead of scaling and rotating the full size bitmap. The frames are rebuilt when the size changes.
+     *
+     * @param symmetry   number of identical blades of the pinwheel, the frames cover 360 / symmetry degrees
+     * @param frameCount number of frames over that period, each one costs width * height * 4 bytes; 0 disables the cache
+     */
+    public void setRotationFrameCache(int symmetry, int frameCount) {
+        if (symmetry <= 0 && frameCount > 0) {
+            throw new IllegalArgumentException("symmetry must be positive, got " + symmetry);
+        }
+        rotationSymmetry = symmetry;
+        rotationFrameCount = frameCount;
+        releaseRotationFrameCache();
+        // The frames are drawn by drawCustomView
+        if (frameCount > 0 && wheelView != null) {
+            removeView(wheelView);
+            wheelView = null;
+        }
+        invalidate();
+    }
+
+    private void releaseRotationFrameCache() {
+        if (rotationFrameCache != null) {
+            rotationFrameCache.recycle();
+            rotationFrameCache = null;
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (wheelView == null && isHardwareAccelerated() && rotationFrameCount == 0 && pinWheelBmp != null) {
+            wheelView = new WheelView(getContext());
+            wheelView.setBitmap(pinWheelBmp);
+            // Takes no room in the LinearLayout, onLayout places it over the center
+            addView(wheelView, 0, new LayoutParams(0, 0));
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (wheelView == null || pinWheelBmp == null)
+            return;
+        computeScaleFactors(getWidth() / 2, getHeight() / 2);
+        if (xScaleFactor <= 0 || yScaleFactor <= 0)
+            return;
+        // Where drawCustomView would draw the wheel
+        int pivot = getPivot();
+        int left = (int) (pivot - pivot * xScaleFactor);
+        int top = (int) (pivot - pivot * yScaleFactor);
+        int width = (int) Math.ceil(pinWheelBmp.getWidth() * xScaleFactor);
+        int height = (int) Math.ceil(pinWheelBmp.getHeight() * yScaleFactor);
+        wheelView.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+        wheelView.layout(left, top, left + width, top + height);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        // Recalculated for the new size by the next draw
+        xScaleFactor = 0;
+        yScaleFactor = 0;
+        wheelBounds.setEmpty();
+        releaseRotationFrameCache();
+    }
+
     /**
      * free current
      */
@@ -295,6 +418,7 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
         if (this.handler != null) {
             handler.removeCallbacksAndMessages(null);
         }
+        stopSpin();
         if (particleSystem != null) {
             particleSystem.cancel();
         }
@@ -310,9 +434,14 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
         if (progressbarStopAnimator != null) {
             progressbarStopAnimator.cancel();
         }
-        if (pinWheelBmp != null && pinWheelBmp.isRecycled()) {
-            pinWheelBmp.recycle();
+        if (wheelView != null) {
+            wheelView.setBitmap(null);
         }
+        if (pinWheelBmp != null) {
+            SpriteCache.getInstance().release(pinWheelBmp);
+            pinWheelBmp = null;
+        }
+        releaseRotationFrameCache();
 
     }
 
@@ -324,26 +453,87 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
      * @return this
      */
     private PinWheelWidget setRotationDegree(float rad) {
-        this.rotationDegree -= rad;
-        postInvalidate();
+        this.rotationDegree = (this.rotationDegree - rad) % 360;
+        if (wheelView != null) {
+            // Only a render property changes, nothing is redrawn
+            wheelView.setRotation(ROTATION_STATE ? rotationDegree : 0);
+        } else {
+            invalidateWheel();
+        }
         return this;
     }
 
+    /**
+     * Invalidates only the area the wheel can cover, the rest of the progress bar did not change.
+     */
+    private void invalidateWheel() {
+        if (wheelBounds.isEmpty()) {
+            if (pinWheelBmp == null || xScaleFactor <= 0 || yScaleFactor <= 0) {
+                // Not drawn yet, the bounds are unknown
+                postInvalidate();
+                return;
+            }
+            computeWheelBounds();
+        }
+        postInvalidate(wheelBounds.left, wheelBounds.top, wheelBounds.right, wheelBounds.bottom);
+    }
 
-    //draw the center of circle view,means pinwheel
-    @Override
-    public boolean drawCustomView(Canvas canvas, float mCenterX, float mCenterY, float mTotalDegree) {
-
-        Matrix matrix = new Matrix();
+    /**
+     * The wheel turns around its own center before it is scaled around the pivot,
+     * so at any angle it stays inside its circumscribed circle scaled the same way.
+     */
+    private void computeWheelBounds() {
         float halfBmpWidth = pinWheelBmp.getWidth() / 2;
         float halfBmpHeight = pinWheelBmp.getHeight() / 2;
+        int pivot = getPivot();
+        float centerX = pivot + (halfBmpWidth - pivot) * xScaleFactor;
+        float centerY = pivot + (halfBmpHeight - pivot) * yScaleFactor;
+        float radius = (float) Math.hypot(halfBmpWidth, halfBmpHeight);
+        float radiusX = radius * xScaleFactor;
+        float radiusY = radius * yScaleFactor;
+        // One more pixel for the filtered edge
+        wheelBounds.set((int) Math.floor(centerX - radiusX) - 1, (int) Math.floor(centerY - radiusY) - 1,
+                (int) Math.ceil(centerX + radiusX) + 1, (int) Math.ceil(centerY + radiusY) + 1);
+    }
+
+    private void computeScaleFactors(float mCenterX, float mCenterY) {
         if (xScaleFactor == 0 || yScaleFactor == 0) {
+            float halfBmpWidth = pinWheelBmp.getWidth() / 2;
             xScaleFactor = (float) (0.67 * mCenterX / halfBmpWidth);//Math.cos(48) = -0.67 Math.sin(42) = -0.91
             yScaleFactor = (float) (0.67 * mCenterY / halfBmpWidth);
             pXyx = ((1 + xScaleFactor) * mCenterX) / mDensity;
             pXyy = ((1 + yScaleFactor) * mCenterY) / mDensity;
         }
-        matrix.setScale(xScaleFactor, yScaleFactor, (int) (pXyx * 1.5 * mDensity / 4), (int) (pXyx * 1.5 * mDensity / 4));
+    }
+
+    //the wheel is scaled around this point, on both axes
+    private int getPivot() {
+        return (int) (pXyx * 1.5 * mDensity / 4);
+    }
+
+
+    //draw the center of circle view,means pinwheel
+    @Override
+    public boolean drawCustomView(Canvas canvas, float mCenterX, float mCenterY, float mTotalDegree) {
+        if (pinWheelBmp == null)
+            return false;
+        if (wheelView != null)
+            return true; // drawn by the child view
+
+        Matrix matrix = pinWheelMatrix;
+        float halfBmpWidth = pinWheelBmp.getWidth() / 2;
+        float halfBmpHeight = pinWheelBmp.getHeight() / 2;
+        computeScaleFactors(mCenterX, mCenterY);
+        int pivot = getPivot();
+        if (rotationFrameCount > 0 && xScaleFactor > 0 && yScaleFactor > 0) {
+            if (rotationFrameCache == null) {
+                rotationFrameCache = new RotationFrameCache(pinWheelBmp, xScaleFactor, yScaleFactor, pivot, pivot,
+                        rotationSymmetry, rotationFrameCount);
+            }
+            rotationFrameCache.draw(canvas, ROTATION_STATE ? rotationDegree : 0);
+            return true;
+        }
+        matrix.setScale(xScaleFactor, yScaleFactor, pivot, pivot);
         if (ROTATION_STATE)
             matrix.preRotate(rotationDegree, halfBmpWidth, halfBmpHeight);
         canvas.drawBitmap(pinWheelBmp, matrix, null);
@@ -353,13 +543,6 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
     @Override
     public boolean handleMessage(Message msg) {
         switch (msg.what) {
-            case UNIFORM: {
-
-                PinWheelWidget.this.setRotationDegree(UNIFORM_DEGREE);
-                if (UNIFORM_STATE)
-                    handler.sendEmptyMessageDelayed(UNIFORM, 0);
-                break;
-            }
             case DOWN_PINWHEEL: {
 //                uniformRat -= 3;
 //                PinWheelWidget.this.setRotationDegree(uniformRat);
@@ -384,6 +567,87 @@ public class PinWheelWidget extends CircleProgressBar implements Handler.Callbac
         return false;
     }
 
+    private void scheduleFrame() {
+        // At most one callback per frame
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mFrameClock.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Turn the wheel once per frame from spin up until the end of the spin down,
+     * the speed itself is animated through {@link #angularVelocity}.
+     */
+    private void startSpin() {
+        SPIN_STATE = true;
+        mLastFrameTimeNanos = -1;
+        scheduleFrame();
+    }
+
+    private void stopSpin() {
+        SPIN_STATE = false;
+        angularVelocity = 0;
+        if (mFrameClock != null) {
+            mFrameClock.removeFrameCallback(this);
+            mFrameScheduled = false;
+        }
+    }
+
+    /**
+     * Advance the pinwheel by its angular velocity over the real time elapsed since the previous frame
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (!SPIN_STATE)
+            return;
+        Trace.beginSection(TRACE_FRAME);
+        if (mLastFrameTimeNanos >= 0 && frameTimeNanos > mLastFrameTimeNanos && angularVelocity > 0) {
+            setRotationDegree(angularVelocity * (frameTimeNanos - mLastFrameTimeNanos) / NANOS_PER_SECOND);
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+        scheduleFrame();
+        Trace.endSection();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        Trace.beginSection(TRACE_DRAW);
+        try {
+            super.onDraw(canvas);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Draws the pinwheel unrotated over its whole bounds, the rotation is applied as a view property.
+     */
+    private static class WheelView extends View {
+
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private final Rect mBounds = new Rect();
+        private Bitmap mBitmap;
+
+        WheelView(Context context) {
+            super(context);
+        }
+
+        void setBitmap(Bitmap bitmap) {
+            mBitmap = bitmap;
+            invalidate();
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            if (mBitmap == null)
+                return;
+            mBounds.set(0, 0, getWidth(), getHeight());
+            canvas.drawBitmap(mBitmap, null, mBounds, mPaint);
+        }
+    }
+
     private static class PinWheelAnimatorListener implements Animator.AnimatorListener {
 
 
@@ -0,0 +1,105 @@
+package com.rocf.pinwheel;
+
+/**
+ * Histogram of the last {@code window} samples over fixed buckets, the oldest sample leaves
+ * when a new one is recorded. Recording is constant time and allocation free.
+ * <p/>
+ * Not thread safe, {@link ParticleSystem} records and reads it on the simulation thread.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class RollingHistogram {
+
+    //frame time buckets from 1ms to 50ms, in nanoseconds
+    static final long[] FRAME_TIME_BUCKETS = {
+            1000000L, 2000000L, 4000000L, 8000000L, 12000000L, 16000000L, 24000000L, 33000000L, 50000000L
+    };
+
+    private final long[] mUpperBounds;
+    //one more bucket than bounds for the samples above the last bound
+    private final int[] mCounts;
+    private final byte[] mSamples;
+    private int mNext;
+    private int mSize;
+
+    /**
+     * @param window      number of samples kept
+     * @param upperBounds inclusive upper bound of each bucket, ascending, at most 127 buckets
+     */
+    public RollingHistogram(int window, long[] upperBounds) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive, got " + window);
+        }
+        if (upperBounds.length >= Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("at most " + (Byte.MAX_VALUE - 1) + " buckets, got " + upperBounds.length);
+        }
+        mUpperBounds = upperBounds.clone();
+        mCounts = new int[upperBounds.length + 1];
+        mSamples = new byte[window];
+    }
+
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < mUpperBounds.length && value > mUpperBounds[bucket]) {
+            bucket++;
+        }
+        if (mSize == mSamples.length) {
+            mCounts[mSamples[mNext]]--;
+        } else {
+            mSize++;
+        }
+        mSamples[mNext] = (byte) bucket;
+        mCounts[bucket]++;
+        mNext = (mNext + 1) % mSamples.length;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = 0;
+        }
+        mNext = 0;
+        mSize = 0;
+    }
+
+    /**
+     * @return number of samples in the window
+     */
+    public int getCount() {
+        return mSize;
+    }
+
+    /**
+     * @return number of buckets, the last one has no upper bound
+     */
+    public int getBucketCount() {
+        return mCounts.length;
+    }
+
+    /**
+     * @return the inclusive upper bound of the bucket, {@link Long#MAX_VALUE} for the last one
+     */
+    public long getBucketUpperBound(int bucket) {
+        return bucket < mUpperBounds.length ? mUpperBounds[bucket] : Long.MAX_VALUE;
+    }
+
+    public int getBucketSamples(int bucket) {
+        return mCounts[bucket];
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return the upper bound of the bucket the percentile falls in, 0 without samples
+     */
+    public long getPercentile(float percentile) {
+        if (mSize == 0)
+            return 0;
+        int rank = (int) Math.ceil(percentile / 100 * mSize);
+        int seen = 0;
+        for (int bucket = 0; bucket < mCounts.length; bucket++) {
+            seen += mCounts[bucket];
+            if (seen >= rank && seen > 0)
+                return getBucketUpperBound(bucket);
+        }
+        return getBucketUpperBound(mCounts.length - 1);
+    }
+}
@@ -0,0 +1,78 @@
+package com.rocf.pinwheel;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+/**
+ * The pinwheel pre-rendered at its on-screen size for a set of angles over one symmetry period,
+ * drawing a frame is a plain blit instead of a filtered scale and rotate of the full size bitmap.
+ * <p/>
+ * Each frame holds the circle the wheel sweeps, not only the unrotated wheel, so the corners are not clipped.
+ * Memory is bounded by the frame count: {@code frameCount * width * height * 4} bytes,
+ * width and height spanning the diagonal of the scaled wheel.
+ *
+ * @author rocf.wong@gmail.com
+ */
+final class RotationFrameCache {
+
+    private final Bitmap[] mFrames;
+    private final float mPeriod;
+    private final float mFrameDegree;
+    private final float mLeft;
+    private final float mTop;
+
+    /**
+     * @param wheel      the full size pinwheel
+     * @param scaleX     the on-screen scale, applied around the pivot
+     * @param symmetry   number of identical blades, the frames cover 360 / symmetry degrees
+     * @param frameCount number of frames over that period
+     */
+    RotationFrameCache(Bitmap wheel, float scaleX, float scaleY, float pivotX, float pivotY, int symmetry, int frameCount) {
+        mPeriod = 360f / symmetry;
+        mFrameDegree = mPeriod / frameCount;
+        // The wheel turns around its own center, at any angle it stays inside its circumscribed circle
+        float halfBmpWidth = wheel.getWidth() / 2;
+        float halfBmpHeight = wheel.getHeight() / 2;
+        float radius = (float) Math.hypot(halfBmpWidth, halfBmpHeight);
+        // Where the scale around the pivot puts the center of the wheel, the frame holds that circle scaled the same way
+        float centerX = pivotX + (halfBmpWidth - pivotX) * scaleX;
+        float centerY = pivotY + (halfBmpHeight - pivotY) * scaleY;
+        int width = (int) Math.ceil(2 * radius * scaleX);
+        int height = (int) Math.ceil(2 * radius * scaleY);
+        mLeft = centerX - width / 2f;
+        mTop = centerY - height / 2f;
+        // Moves the scaled wheel from the origin of the view to the origin of the frame
+        float offsetX = pivotX - pivotX * scaleX - mLeft;
+        float offsetY = pivotY - pivotY * scaleY - mTop;
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+        Matrix matrix = new Matrix();
+        mFrames = new Bitmap[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            matrix.setScale(scaleX, scaleY);
+            matrix.preRotate(i * mFrameDegree, halfBmpWidth, halfBmpHeight);
+            matrix.postTranslate(offsetX, offsetY);
+            new Canvas(frame).drawBitmap(wheel, matrix, paint);
+            mFrames[i] = frame;
+        }
+    }
+
+    /**
+     * Blits the frame closest to the given rotation.
+     */
+    void draw(Canvas canvas, float degree) {
+        float angle = degree % mPeriod;
+        if (angle < 0)
+            angle += mPeriod;
+        int index = Math.round(angle / mFrameDegree) % mFrames.length;
+        canvas.drawBitmap(mFrames[index], mLeft, mTop, null);
+    }
+
+    void recycle() {
+        for (Bitmap frame : mFrames) {
+            frame.recycle();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.rocf.pinwheel;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+import com.rocf.pinwheel.core.ParticleFrame;
+
+/**
+ * Draws all particles of a {@link ParticleFrame} as textured quads through
+ * {@link Canvas#drawVertices}, so a frame costs one draw op instead of one {@code drawBitmap} per particle.
+ * <p/>
+ * Every quad maps the whole sprite through a {@link BitmapShader}, the particle alpha is the vertex color
+ * which is modulated with the texture.
+ *
+ * @author rocf.wong@gmail.com
+ */
+final class SpriteBatch {
+
+    //16 bit indices address at most 32767 vertices, i.e. this many quads per draw call
+    private static final int MAX_QUADS = 32767 / 4;
+    private static final int WHITE = 0x00FFFFFF;
+
+    private final Paint mPaint = new Paint();
+    private Bitmap mImage;
+
+    private int mQuadCapacity;
+    private float[] mVerts;
+    private float[] mTexs;
+    private int[] mColors;
+    private short[] mIndices;
+
+    /**
+     * @return true if the canvas can take {@link Canvas#drawVertices}, hardware canvases only support it since API 29
+     */
+    static boolean isSupported(Canvas canvas) {
+        return !canvas.isHardwareAccelerated() || android.os.Build.VERSION.SDK_INT >= 29;
+    }
+
+    void draw(Canvas canvas, ParticleFrame frame, Bitmap image) {
+        final int count = frame.mCount;
+        if (count == 0)
+            return;
+        setImage(image);
+        ensureCapacity(Math.min(count, MAX_QUADS));
+
+        final float halfWidth = image.getWidth() / 2;
+        final float halfHeight = image.getHeight() / 2;
+        final float[] verts = mVerts;
+        final int[] colors = mColors;
+        int quads = 0;
+        for (int i = 0; i < count; i++) {
+            // Same transform as scaling around the sprite center then translating to the particle position
+            float scale = frame.mScale[i];
+            float centerX = frame.mX[i] + halfWidth;
+            float centerY = frame.mY[i] + halfHeight;
+            float left = centerX - halfWidth * scale;
+            float right = centerX + halfWidth * scale;
+            float top = centerY - halfHeight * scale;
+            float bottom = centerY + halfHeight * scale;
+
+            int v = quads * 8;
+            verts[v] = left;
+            verts[v + 1] = top;
+            verts[v + 2] = right;
+            verts[v + 3] = top;
+            verts[v + 4] = right;
+            verts[v + 5] = bottom;
+            verts[v + 6] = left;
+            verts[v + 7] = bottom;
+
+            int alpha = (int) frame.mAlpha[i];
+            if (alpha < 0)
+                alpha = 0;
+            else if (alpha > 255)
+                alpha = 255;
+            int color = (alpha << 24) | WHITE;
+            int c = quads * 4;
+            colors[c] = color;
+            colors[c + 1] = color;
+            colors[c + 2] = color;
+            colors[c + 3] = color;
+
+            if (++quads == MAX_QUADS) {
+                flush(canvas, quads);
+                quads = 0;
+            }
+        }
+        flush(canvas, quads);
+    }
+
+    private void flush(Canvas canvas, int quads) {
+        if (quads == 0)
+            return;
+        canvas.drawVertices(Canvas.VertexMode.TRIANGLES, quads * 8, mVerts, 0, mTexs, 0, mColors, 0,
+                mIndices, 0, quads * 6, mPaint);
+    }
+
+    private void setImage(Bitmap image) {
+        if (mImage == image)
+            return;
+        mImage = image;
+        mPaint.setShader(new BitmapShader(image, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+        // The texture coordinates depend on the sprite size
+        mQuadCapacity = 0;
+    }
+
+    private void ensureCapacity(int quads) {
+        if (quads <= mQuadCapacity)
+            return;
+        mVerts = new float[quads * 8];
+        mTexs = new float[quads * 8];
+        // Older platforms check the colors against the vertex value count, not the vertex count
+        mColors = new int[quads * 8];
+        mIndices = new short[quads * 6];
+        final float width = mImage.getWidth();
+        final float height = mImage.getHeight();
+        for (int q = 0; q < quads; q++) {
+            int t = q * 8;
+            mTexs[t] = 0;
+            mTexs[t + 1] = 0;
+            mTexs[t + 2] = width;
+            mTexs[t + 3] = 0;
+            mTexs[t + 4] = width;
+            mTexs[t + 5] = height;
+            mTexs[t + 6] = 0;
+            mTexs[t + 7] = height;
+
+            int i = q * 6;
+            short first = (short) (q * 4);
+            mIndices[i] = first;
+            mIndices[i + 1] = (short) (first + 1);
+            mIndices[i + 2] = (short) (first + 2);
+            mIndices[i + 3] = first;
+            mIndices[i + 4] = (short) (first + 2);
+            mIndices[i + 5] = (short) (first + 3);
+        }
+        mQuadCapacity = quads;
+    }
+}
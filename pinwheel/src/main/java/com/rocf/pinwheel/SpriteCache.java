@@ -0,0 +1,176 @@
+package com.rocf.pinwheel;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Process-wide cache of the decoded sprites of {@link PinWheelWidget} and {@link ParticleSystem}.
+ * <p/>
+ * Bitmaps are keyed by resource id, screen density and target size, so every widget instance and every
+ * start of an effect shares one decoded bitmap. Each {@link #acquire} must be paired with a
+ * {@link #release(Bitmap)}; bitmaps nobody holds stay cached and are evicted least recently used first
+ * once the cache grows over its byte budget. Bitmaps in use are never evicted.
+ *
+ * @author rocf.wong@gmail.com
+ */
+public final class SpriteCache {
+
+    private static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static SpriteCache sInstance;
+
+    private int mMaxBytes;
+    private int mBytes;
+    //access ordered, eldest first
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private final IdentityHashMap<Bitmap, Entry> mEntriesByBitmap = new IdentityHashMap<Bitmap, Entry>();
+
+    public static synchronized SpriteCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new SpriteCache(DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    public SpriteCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Change the byte budget, evicting unused bitmaps right away if needed.
+     */
+    public synchronized void setMaxBytes(int maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize();
+    }
+
+    /**
+     * @return the resource decoded for the density of the resources, at its natural size
+     */
+    public Bitmap acquire(Resources resources, int resId) {
+        return acquire(resources, resId, 0, 0);
+    }
+
+    /**
+     * @param width  target width in pixels, 0 for the natural width
+     * @param height target height in pixels, 0 for the natural height
+     * @return the resource decoded for the density of the resources and scaled to the target size
+     */
+    public synchronized Bitmap acquire(Resources resources, int resId, int width, int height) {
+        int densityDpi = resources.getDisplayMetrics().densityDpi;
+        Key key = new Key(resId, densityDpi, width, height);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(decode(resources, resId, densityDpi, width, height));
+            mEntries.put(key, entry);
+            mEntriesByBitmap.put(entry.mBitmap, entry);
+            mBytes += entry.mBytes;
+        }
+        entry.mReferences++;
+        trimToSize();
+        return entry.mBitmap;
+    }
+
+    /**
+     * Give back a bitmap obtained from {@link #acquire}, it must not be used afterwards.
+     * Bitmaps that don't come from this cache are ignored.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        Entry entry = mEntriesByBitmap.get(bitmap);
+        if (entry == null || entry.mReferences == 0)
+            return;
+        entry.mReferences--;
+        trimToSize();
+    }
+
+    /**
+     * Drops every bitmap nobody holds, e.g. from {@code onTrimMemory}.
+     */
+    public synchronized void evictUnused() {
+        int maxBytes = mMaxBytes;
+        mMaxBytes = 0;
+        trimToSize();
+        mMaxBytes = maxBytes;
+    }
+
+    private void trimToSize() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.mReferences == 0) {
+                iterator.remove();
+                mEntriesByBitmap.remove(entry.mBitmap);
+                mBytes -= entry.mBytes;
+            }
+        }
+    }
+
+    private static Bitmap decode(Resources resources, int resId, int densityDpi, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inTargetDensity = densityDpi;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resId, options);
+        if (width <= 0 && height <= 0) {
+            return bitmap;
+        }
+        int targetWidth = width > 0 ? width : bitmap.getWidth();
+        int targetHeight = height > 0 ? height : bitmap.getHeight();
+        if (targetWidth == bitmap.getWidth() && targetHeight == bitmap.getHeight()) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private static final class Key {
+        private final int mResId;
+        private final int mDensityDpi;
+        private final int mWidth;
+        private final int mHeight;
+
+        Key(int resId, int densityDpi, int width, int height) {
+            mResId = resId;
+            mDensityDpi = densityDpi;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return mResId == key.mResId && mDensityDpi == key.mDensityDpi
+                    && mWidth == key.mWidth && mHeight == key.mHeight;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mResId;
+            result = 31 * result + mDensityDpi;
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            return result;
+        }
+    }
+
+    private static final class Entry {
+        private final Bitmap mBitmap;
+        private final int mBytes;
+        private int mReferences;
+
+        Entry(Bitmap bitmap) {
+            mBitmap = bitmap;
+            mBytes = bitmap.getByteCount();
+        }
+    }
+}